@@ -0,0 +1,98 @@
+package hex2;
+
+/**
+ * Checks the list of empty fields of Board against the marks on the board.
+ * Random marks are put (with putMark and putMarkHard) and removed (with
+ * removeMark and putMarkHard with mark 0), and boards are copied with
+ * deepCopy, snapshot and copyFrom. After every step the number of empty
+ * fields, the list, the position of every field in the list and the Zobrist
+ * hash are compared with the ones of a board built from the marks.
+ *
+ * Run with: ant bench -Dbench.class=hex2.EmptyFieldListCheck
+ * -Dbench.args="400000 1 5 8 9 11 19 63"
+ * (number of steps for every size, then the sizes)
+ *
+ * @author Ljubo Raicevic <rljubo90@gmail.com>
+ */
+public class EmptyFieldListCheck {
+
+    public static void main(String[] args) {
+        int steps = args.length > 0 ? Integer.parseInt(args[0]) : 400000;
+        int[] sizes = {1, 5, 8, 9, 11, 19, 63};
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int iCount = 1; iCount < args.length; iCount++) {
+                sizes[iCount - 1] = Integer.parseInt(args[iCount]);
+            }
+        }
+
+        for (int size : sizes) {
+            RandomSource random = new Xoshiro256(size);
+            Board b = new Board(size);
+            Board other = new Board(size);
+            for (int step = 0; step < steps; step++) {
+                int field = random.nextInt(size * size);
+                byte mark = (byte) (1 + random.nextInt(2));
+                switch (random.nextInt(8)) {
+                    case 0: case 1: b.putMark(field, mark); break;
+                    case 2: if (!b.isFieldMarked(field)) { b.putMarkHard(field, mark); } break;
+                    case 3: b.removeMark(field); break;
+                    case 4: if (b.isFieldMarked(field)) { b.putMarkHard(field, (byte) 0); } break;
+                    case 5: other = b.snapshot(); break;
+                    case 6: b.copyFrom(other); break;
+                    default: other = b.deepCopy(); break;
+                }
+                check(b, size, step);
+                check(other, size, step);
+            }
+            System.out.println("size " + size + ": " + steps + " steps, OK");
+        }
+    }
+
+    /**
+     * Compares the board with a board built from its marks.
+     *
+     * @param b Board
+     * @param size Board size
+     * @param step Step, for the message
+     */
+    private static void check(Board b, int size, int step) {
+        byte[] sequence = new byte[size * size];
+        int empty = 0;
+        for (int i = 0; i < size * size; i++) {
+            sequence[i] = b.getFieldMark(i);
+            if (sequence[i] == 0) {
+                empty++;
+            }
+        }
+
+        if (b.getNoOfEmptyFields() != empty) {
+            fail(size, step, b.getNoOfEmptyFields() + " empty fields counted, "
+                    + empty + " on the board");
+        }
+        boolean[] listed = new boolean[size * size];
+        for (int k = 0; k < empty; k++) {
+            int field = b.getEmptyField(k);
+            if (b.isFieldMarked(field) || listed[field]
+                    || b.getEmptyFieldPosition(field) != k) {
+                fail(size, step, "entry " + k + " (field " + field + ") is wrong");
+            }
+            listed[field] = true;
+        }
+        for (int i = 0; i < size * size; i++) {
+            if (!listed[i] && b.getEmptyFieldPosition(i) != -1) {
+                fail(size, step, "marked field " + i + " has a position");
+            }
+        }
+
+        Board rebuilt = new Board(size, sequence, b.whosOnTheMove());
+        if (rebuilt.getZobristHash() != b.getZobristHash()) {
+            fail(size, step, "wrong Zobrist hash");
+        }
+    }
+
+    private static void fail(int size, int step, String message) {
+        throw new IllegalStateException(
+                "size " + size + ", step " + step + ": " + message);
+    }
+}
@@ -0,0 +1,61 @@
+package hex2;
+
+/**
+ * Compares playouts per second of the two Playout modes: filling the board
+ * and checking it with the WinDetector, and placing stones one at a time into
+ * a union-find until someone wins.
+ * 
+ * Run with: ant bench -Dbench.class=hex2.IncrementalPlayoutBenchmark
+ *           -Dbench.args="7 11 13 19"
+ * 
+ * @author Ljubo Raicevic <rljubo90@gmail.com>
+ */
+public class IncrementalPlayoutBenchmark {
+    
+    /**
+     * Number of playouts measured per board size and mode.
+     */
+    private static final int PLAYOUTS = 200000;
+
+    public static void main(String[] args) {
+        int[] sizes = {7, 11, 13, 19};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int iCount = 0; iCount < args.length; iCount++) {
+                sizes[iCount] = Integer.parseInt(args[iCount]);
+            }
+        }
+        
+        System.out.println("size  movesPlayed  fill-and-check/s  incremental/s");
+        for (int size : sizes) {
+            for (int movesPlayed : new int[] {0, size * size / 2}) {
+                Board b = RandomBoardGenerator.makeRandomBoard(
+                        movesPlayed, size, new Xoshiro256(size));
+                double fill = measure(b, false);
+                double incremental = measure(b, true);
+                System.out.printf("%4d  %11d  %16.0f  %13.0f%n", 
+                        size, movesPlayed, fill, incremental);
+            }
+        }
+    }
+    
+    /**
+     * Measures playouts per second from the first empty field of the board,
+     * after a warm-up round.
+     * 
+     * @param b Board
+     * @param incremental Playout mode
+     * @return Playouts per second
+     */
+    private static double measure(Board b, boolean incremental) {
+        Playout playout = new Playout(b.getSize(), new Xoshiro256(42));
+        playout.setIncremental(incremental);
+        playout.load(b);
+        int field = playout.getEmptyField(playout.getNoOfEmptyFields() / 2);
+        
+        playout.simulate(field, PLAYOUTS);
+        long start = System.nanoTime();
+        playout.simulate(field, PLAYOUTS);
+        return PLAYOUTS * 1e9 / (System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,47 @@
+package hex2;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures playouts per second and bytes allocated per playout of the Playout
+ * kernel. After warming up, the kernel shouldn't allocate anything, so the
+ * allocation per playout should be 0.
+ * 
+ * Run with: ant bench -Dbench.class=hex2.PlayoutBenchmark
+ * 
+ * @author Ljubo Raicevic <rljubo90@gmail.com>
+ */
+public class PlayoutBenchmark {
+
+    public static void main(String[] args) {
+        int boardSize = args.length > 0 ? Integer.parseInt(args[0]) : 7;
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        com.sun.management.ThreadMXBean threads = 
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        
+        Board b = RandomBoardGenerator.makeRandomBoard(0, boardSize);
+        Playout playout = new Playout(boardSize, new Xoshiro256(42));
+        playout.load(b);
+        int fields = playout.getNoOfEmptyFields();
+        long sink = 0;
+        
+        for (int round = 0; round < 10; round++) {
+            long bytesBefore = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            
+            //the same work as one evaluateBoard call on the empty board
+            for (int k = 0; k < fields; k++) {
+                sink += playout.simulate(playout.getEmptyField(k), repetitions);
+            }
+            
+            long time = System.nanoTime() - start;
+            long bytes = threads.getThreadAllocatedBytes(thread) - bytesBefore;
+            long playouts = (long) fields * repetitions;
+            System.out.printf("round %d: %.0f playouts/s, %.4f bytes/playout%n",
+                    round, playouts * 1e9 / time, bytes / (double) playouts);
+        }
+        
+        System.out.println("(" + sink + ")");
+    }
+}
@@ -0,0 +1,125 @@
+package hex2;
+
+import java.util.Arrays;
+
+/**
+ * Compares trying a move and taking it back with UndoUF (Game.makeMove and
+ * Game.unmakeMove) against rebuilding a UF of the whole position for every
+ * tried move.
+ * 
+ * Run with: ant bench -Dbench.class=hex2.UndoUFBenchmark -Dbench.args="7 11"
+ * 
+ * @author Ljubo Raicevic <rljubo90@gmail.com>
+ */
+public class UndoUFBenchmark {
+    
+    /**
+     * How many times every empty field is tried.
+     */
+    private static final int ROUNDS = 2000;
+
+    public static void main(String[] args) {
+        int[] sizes = {7, 11, 19};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int iCount = 0; iCount < args.length; iCount++) {
+                sizes[iCount] = Integer.parseInt(args[iCount]);
+            }
+        }
+        
+        System.out.println("size  undo tries/s  rebuild tries/s");
+        for (int size : sizes) {
+            //play half of the board at random
+            Board b = new Board(size);
+            Game g = new Game(b, null, null);
+            RandomSource random = new Xoshiro256(size);
+            while (b.getNoOfEmptyFields() > size * size / 2) {
+                if (g.makeMove(b.getRandomEmptyField(random)) != 0) {
+                    g.unmakeMove();
+                }
+            }
+            
+            int[] empty = Arrays.copyOf(b.getEmptyFieldIndices(), b.getNoOfEmptyFields());
+            for (int round = 0; round < 2; round++) {
+                long sink = 0;
+                long start = System.nanoTime();
+                for (int r = 0; r < ROUNDS; r++) {
+                    for (int c : empty) {
+                        sink += g.makeMove(c);
+                        g.unmakeMove();
+                    }
+                }
+                double undo = tries(empty.length, start);
+                
+                start = System.nanoTime();
+                for (int r = 0; r < ROUNDS; r++) {
+                    for (int c : empty) {
+                        sink += rebuild(b, c);
+                    }
+                }
+                double rebuild = tries(empty.length, start);
+                
+                if (round == 1) {
+                    System.out.printf("%4d  %12.0f  %15.0f  (%d)%n", 
+                            size, undo, rebuild, sink);
+                }
+            }
+        }
+    }
+    
+    private static double tries(int fields, long start) {
+        return (double) fields * ROUNDS * 1e9 / (System.nanoTime() - start);
+    }
+    
+    /**
+     * Builds a new UF of the board with the move added, the way a Game
+     * without undo would have to.
+     * 
+     * @param b Board
+     * @param moveIndex Index of an empty field
+     * @return 1 if the first player won, 2 if the second did, 0 otherwise
+     */
+    private static int rebuild(Board b, int moveIndex) {
+        int size = b.getSize();
+        int n = size * size;
+        UF uf = new UF(n + 4);
+        
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                int i = row * size + col;
+                byte mark = i == moveIndex 
+                        ? b.whosOnTheMove() : b.getFieldMark(i);
+                if (mark == 0) { continue; }
+                
+                if (mark == 1 && row == 0)        { uf.union(i, n); }
+                if (mark == 1 && row == size - 1) { uf.union(i, n + 1); }
+                if (mark == 2 && col == 0)        { uf.union(i, n + 2); }
+                if (mark == 2 && col == size - 1) { uf.union(i, n + 3); }
+                
+                //neighbors to the right and below
+                if (col < size - 1 && same(b, row, col + 1, mark, moveIndex)) {
+                    uf.union(i, i + 1);
+                }
+                if (row < size - 1 && col > 0 
+                        && same(b, row + 1, col - 1, mark, moveIndex)) {
+                    uf.union(i, i + size - 1);
+                }
+                if (row < size - 1 && same(b, row + 1, col, mark, moveIndex)) {
+                    uf.union(i, i + size);
+                }
+            }
+        }
+        
+        if (uf.connected(n, n + 1))     { return 1; }
+        if (uf.connected(n + 2, n + 3)) { return 2; }
+        return 0;
+    }
+    
+    private static boolean same(Board b, int row, int col, byte mark, 
+            int moveIndex) {
+        int i = row * b.getSize() + col;
+        byte other = i == moveIndex 
+                ? b.whosOnTheMove() : b.getFieldMark(i);
+        return other == mark;
+    }
+}
@@ -0,0 +1,112 @@
+package hex2;
+
+import java.util.Arrays;
+
+/**
+ * Checks WinDetector against a plain flood fill over the neighbors of
+ * BoardGeometry, on random boards. isVerticalConnected and
+ * isHorizontalConnected are checked on full and partly full boards,
+ * didPlayerWin only on full boards (on the others it says the second player
+ * won whenever the first one didn't). Disagreements of
+ * MonteCarlo.didPlayerWinRowScan with the flood fill on full boards are
+ * counted too, but they aren't errors: the row scan misses paths that go back
+ * up a row.
+ *
+ * Run with: ant bench -Dbench.class=hex2.WinDetectorCheck
+ * -Dbench.args="1000000 1 7 8 9 19 63"
+ * (number of boards for every size, then the sizes)
+ *
+ * @author Ljubo Raicevic <rljubo90@gmail.com>
+ */
+public class WinDetectorCheck {
+
+    public static void main(String[] args) {
+        int boards = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int[] sizes = {1, 2, 3, 5, 7, 8, 9, 11, 13, 19, 27, 63};
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int iCount = 1; iCount < args.length; iCount++) {
+                sizes[iCount - 1] = Integer.parseInt(args[iCount]);
+            }
+        }
+
+        System.out.println("size  boards  row scan disagreements");
+        for (int size : sizes) {
+            RandomSource random = new Xoshiro256(size);
+            WinDetector detector = new WinDetector(size);
+            int[] stack = new int[size * size];
+            boolean[] reached = new boolean[size * size];
+            int rowScan = 0;
+
+            for (int n = 0; n < boards; n++) {
+                //every other board is full
+                int movesPlayed = n % 2 == 0 ? size * size
+                        : random.nextInt(size * size + 1);
+                Board b = RandomBoardGenerator.makeRandomBoard(
+                        movesPlayed, size, random);
+                for (byte player = 1; player <= 2; player++) {
+                    boolean expected = floodFill(b, player, stack, reached);
+                    boolean connected = player == 1
+                            ? detector.isVerticalConnected(b.getVerticalBits())
+                            : detector.isHorizontalConnected(b.getHorizontalBits());
+                    if (connected != expected || movesPlayed == size * size
+                            && detector.didPlayerWin(b, player) != expected) {
+                        throw new IllegalStateException("size " + size
+                                + ", player " + player + ", board "
+                                + b.toSingleRowString(false)
+                                + ": WinDetector disagrees with the flood fill");
+                    }
+                    if (movesPlayed == size * size
+                            && MonteCarlo.didPlayerWinRowScan(b, player) != expected) {
+                        rowScan++;
+                    }
+                }
+            }
+            System.out.printf("%4d  %6d  %d%n", size, boards, rowScan);
+        }
+    }
+
+    /**
+     * Checks if the player connected the edges with a depth first search from
+     * the player's first edge.
+     *
+     * @param b Board
+     * @param player 1 or 2
+     * @param stack Scratch space, size * size fields
+     * @param reached Scratch space, size * size fields
+     * @return true if the player won
+     */
+    private static boolean floodFill(Board b, byte player, int[] stack,
+            boolean[] reached) {
+        BoardGeometry geometry = b.getGeometry();
+        int fields = geometry.getNoOfFields();
+        int start = player == 1 ? BoardGeometry.TOP : BoardGeometry.LEFT;
+        int goal = geometry.getEdgeNode(
+                player == 1 ? BoardGeometry.BOTTOM : BoardGeometry.RIGHT);
+        Arrays.fill(reached, false);
+
+        int top = 0;
+        for (int i = 0; i < fields; i++) {
+            if ((geometry.getEdges(i) & 1 << start) != 0
+                    && b.getFieldMark(i) == player) {
+                reached[i] = true;
+                stack[top++] = i;
+            }
+        }
+        while (top > 0) {
+            int field = stack[--top];
+            for (int d = 0; d < 6; d++) {
+                int neighbor = geometry.getNeighbor(field, d);
+                if (neighbor == goal) {
+                    return true;
+                }
+                if (!geometry.isEdgeNode(neighbor) && !reached[neighbor]
+                        && b.getFieldMark(neighbor) == player) {
+                    reached[neighbor] = true;
+                    stack[top++] = neighbor;
+                }
+            }
+        }
+        return false;
+    }
+}
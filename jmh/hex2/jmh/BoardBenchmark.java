@@ -0,0 +1,99 @@
+package hex2.jmh;
+
+import hex2.Board;
+import hex2.Coordinate;
+import hex2.RandomBoardGenerator;
+import hex2.Xoshiro256;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Board.deepCopy, Board.snapshot, Board.copyFrom, Board.getEmptyFields, going through the list of empty
+ * fields without copying it, and putting and removing a mark on a random
+ * empty field, on a half full board.
+ * 
+ * @author Ljubo Raicevic <rljubo90@gmail.com>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+    @Param({"7", "11", "19"})
+    public int size;
+
+    private Board board;
+
+    private Board copy;
+
+    private final Xoshiro256 random = new Xoshiro256(1);
+
+    @Setup
+    public void setUp() {
+        board = RandomBoardGenerator.makeRandomBoard(
+                size * size / 2, size, new Xoshiro256(size));
+        copy = board.deepCopy();
+    }
+
+    @Benchmark
+    public Board deepCopy() {
+        return board.deepCopy();
+    }
+
+    @Benchmark
+    public Board snapshot() {
+        return board.snapshot();
+    }
+
+    @Benchmark
+    public Board copyFrom() {
+        copy.copyFrom(board);
+        return copy;
+    }
+
+    @Benchmark
+    public Coordinate[] getEmptyFields() {
+        return board.getEmptyFields();
+    }
+
+    @Benchmark
+    public int iterateEmptyFields() {
+        int[] empties = board.getEmptyFieldIndices();
+        int sum = 0;
+        for (int k = 0; k < board.getNoOfEmptyFields(); k++) {
+            sum += empties[k];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int emptyFieldIterator() {
+        PrimitiveIterator.OfInt empties = board.emptyFieldIterator();
+        int sum = 0;
+        while (empties.hasNext()) {
+            sum += empties.nextInt();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public boolean putAndRemoveRandomMark() {
+        int field = board.getRandomEmptyField(random);
+        board.putMark(field, board.whosOnTheMove());
+        return board.removeMark(field);
+    }
+}
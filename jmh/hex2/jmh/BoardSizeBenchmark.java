@@ -0,0 +1,88 @@
+package hex2.jmh;
+
+import hex2.Board;
+import hex2.MCSimulationMove;
+import hex2.MonteCarlo;
+import hex2.Playout;
+import hex2.RandomBoardGenerator;
+import hex2.Xoshiro256;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * How Monte Carlo simulations scale with the board size: playouts per second
+ * on the empty board in both of the Playout modes and with the bridge policy
+ * on, and the time of a whole MonteCarlo.evaluateBoard call on a board with a
+ * fifth of the fields played.
+ *
+ * @author Ljubo Raicevic <rljubo90@gmail.com>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardSizeBenchmark {
+
+    @Param({"7", "13", "19", "27"})
+    public int size;
+
+    @Param({"100"})
+    public int repetitions;
+
+    private Playout fill;
+    private Playout incremental;
+    private Playout bridge;
+    private int field;
+    private Board board;
+    private final Xoshiro256 random = new Xoshiro256(7);
+
+    @Setup
+    public void setUp() {
+        Board empty = new Board(size);
+        fill = new Playout(size, new Xoshiro256(42));
+        fill.load(empty);
+        incremental = new Playout(size, new Xoshiro256(42));
+        incremental.setIncremental(true);
+        incremental.load(empty);
+        bridge = new Playout(size, new Xoshiro256(42));
+        bridge.setBridgePolicy(true);
+        bridge.load(empty);
+        field = fill.getEmptyField(0);
+        board = RandomBoardGenerator.makeRandomBoard(
+                size * size / 5, size, new Xoshiro256(size));
+    }
+
+    @Benchmark
+    public int playout() {
+        return fill.simulate(field, 1);
+    }
+
+    @Benchmark
+    public int playoutIncremental() {
+        return incremental.simulate(field, 1);
+    }
+
+    @Benchmark
+    public int playoutBridge() {
+        return bridge.simulate(field, 1);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public MCSimulationMove[] evaluateBoard() {
+        return MonteCarlo.evaluateBoard(board, repetitions, null, random);
+    }
+}
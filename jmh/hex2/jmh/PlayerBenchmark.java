@@ -0,0 +1,112 @@
+package hex2.jmh;
+
+import hex2.Board;
+import hex2.PlayerMonteCarlo;
+import hex2.PlayerNeuralNetwork;
+import hex2.RandomBoardGenerator;
+import hex2.Xoshiro256;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Moves per second of PlayerNeuralNetwork (pure Java, with a random network
+ * of the usual shape written to a temporary file) and PlayerMonteCarlo, on a
+ * board with a few moves played.
+ * 
+ * @author Ljubo Raicevic <rljubo90@gmail.com>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlayerBenchmark {
+
+    /**
+     * Hidden neurons of the generated network.
+     */
+    private static final int HIDDEN = 20;
+
+    @Param({"7"})
+    public int size;
+
+    @Param({"100"})
+    public int repetitions;
+
+    private Board board;
+    private PlayerNeuralNetwork neuralNetwork;
+    private PlayerMonteCarlo monteCarlo;
+
+    @Setup
+    public void setUp() throws IOException {
+        board = RandomBoardGenerator.makeRandomBoard(6, size, new Xoshiro256(size));
+        File net = File.createTempFile("hex2-bench", ".net");
+        net.deleteOnExit();
+        writeRandomNetwork(net, size * size);
+        neuralNetwork = new PlayerNeuralNetwork(net.getPath());
+        monteCarlo = new PlayerMonteCarlo(repetitions);
+    }
+
+    @Benchmark
+    public int neuralNetworkMove() {
+        return neuralNetwork.makeFieldMove(board, 0);
+    }
+
+    @Benchmark
+    public int monteCarloMove() {
+        return monteCarlo.makeFieldMove(board, 0);
+    }
+
+    /**
+     * Writes a FANN network with one hidden layer and random weights.
+     * 
+     * @param file File to write
+     * @param inputs Number of inputs
+     * @throws IOException if the file can't be written
+     */
+    private static void writeRandomNetwork(File file, int inputs) 
+            throws IOException {
+        Xoshiro256 random = new Xoshiro256(7);
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            out.println("FANN_FLO_2.1");
+            out.println("num_layers=3");
+            out.println("layer_sizes=" + (inputs + 1) + " " + (HIDDEN + 1) + " 2");
+            out.println("scale_included=0");
+            
+            out.print("neurons (num_inputs, activation_function, activation_steepness)=");
+            for (int n = 0; n <= inputs; n++) { out.print("(0, 0, 0.0) "); }
+            for (int n = 0; n < HIDDEN; n++) { out.print("(" + (inputs + 1) + ", 5, 0.5) "); }
+            out.print("(0, 0, 0.0) (" + (HIDDEN + 1) + ", 3, 0.5) (0, 0, 0.0) ");
+            out.println();
+            
+            out.print("connections (connected_to_neuron, weight)=");
+            for (int n = 0; n < HIDDEN; n++) {
+                for (int c = 0; c <= inputs; c++) { out.print(connection(c, random)); }
+            }
+            for (int c = 0; c <= HIDDEN; c++) {
+                out.print(connection(inputs + 1 + c, random));
+            }
+            out.println();
+        }
+    }
+    
+    private static String connection(int neuron, Xoshiro256 random) {
+        double weight = (random.nextLong() >>> 11) * 0x1.0p-53 * 2 - 1;
+        return String.format(Locale.ROOT, "(%d, %.8e) ", neuron, weight);
+    }
+}
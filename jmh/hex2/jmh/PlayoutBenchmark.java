@@ -0,0 +1,89 @@
+package hex2.jmh;
+
+import hex2.Board;
+import hex2.MCSimulationMove;
+import hex2.MonteCarlo;
+import hex2.Playout;
+import hex2.RandomBoardGenerator;
+import hex2.Xoshiro256;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Single playouts in both Playout modes, and whole MonteCarlo.evaluateBoard
+ * calls (sequential and with a pool of workers) on the empty board.
+ * 
+ * @author Ljubo Raicevic <rljubo90@gmail.com>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlayoutBenchmark {
+
+    @Param({"5", "7", "9", "11"})
+    public int size;
+
+    @Param({"100"})
+    public int repetitions;
+
+    @Param({"2"})
+    public int workers;
+
+    private Board board;
+    private Playout fill;
+    private Playout incremental;
+    private int field;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp() {
+        board = new Board(size);
+        fill = new Playout(size, new Xoshiro256(1));
+        fill.load(board);
+        incremental = new Playout(size, new Xoshiro256(2));
+        incremental.setIncremental(true);
+        incremental.load(board);
+        field = fill.getEmptyField(fill.getNoOfEmptyFields() / 2);
+        pool = new ForkJoinPool(workers);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public int playout() {
+        return fill.simulate(field, 1);
+    }
+
+    @Benchmark
+    public int playoutIncremental() {
+        return incremental.simulate(field, 1);
+    }
+
+    @Benchmark
+    public MCSimulationMove[] evaluateBoard() {
+        return MonteCarlo.evaluateBoard(board, repetitions, null);
+    }
+
+    @Benchmark
+    public MCSimulationMove[] evaluateBoardParallel() {
+        return MonteCarlo.evaluateBoard(board, repetitions, null, pool, workers);
+    }
+}
@@ -0,0 +1,76 @@
+package hex2.jmh;
+
+import hex2.UF;
+import hex2.UndoUF;
+import hex2.Xoshiro256;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Union and find on a UF the size of a Game's union-find, built from scratch,
+ * and the same unions on an UndoUF that is rolled back afterwards.
+ * 
+ * @author Ljubo Raicevic <rljubo90@gmail.com>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UFBenchmark {
+
+    @Param({"7", "11", "19"})
+    public int size;
+
+    private int sites;
+    private int[] p;
+    private int[] q;
+    private UndoUF undo;
+
+    @Setup
+    public void setUp() {
+        sites = size * size + 4;
+        Xoshiro256 random = new Xoshiro256(size);
+        p = new int[sites];
+        q = new int[sites];
+        for (int iCount = 0; iCount < sites; iCount++) {
+            p[iCount] = random.nextInt(sites);
+            q[iCount] = random.nextInt(sites);
+        }
+        undo = new UndoUF(sites);
+    }
+
+    @Benchmark
+    public int unionFind() {
+        UF uf = new UF(sites);
+        int connected = 0;
+        for (int iCount = 0; iCount < sites; iCount++) {
+            uf.union(p[iCount], q[iCount]);
+            if (uf.connected(0, sites - 1)) { connected++; }
+        }
+        return connected;
+    }
+
+    @Benchmark
+    public int unionFindUndo() {
+        int checkpoint = undo.checkpoint();
+        int connected = 0;
+        for (int iCount = 0; iCount < sites; iCount++) {
+            undo.union(p[iCount], q[iCount]);
+            if (undo.connected(0, sites - 1)) { connected++; }
+        }
+        undo.rollback(checkpoint);
+        return connected;
+    }
+}
@@ -0,0 +1,66 @@
+package hex2.jmh;
+
+import hex2.Board;
+import hex2.MonteCarlo;
+import hex2.RandomBoardGenerator;
+import hex2.Xoshiro256;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * MonteCarlo.didPlayerWin (bitboard flood fill) and the old row scan on
+ * random full boards.
+ * 
+ * @author Ljubo Raicevic <rljubo90@gmail.com>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WinCheckBenchmark {
+
+    /**
+     * Number of different boards the benchmark cycles through.
+     */
+    private static final int BOARDS = 256;
+
+    @Param({"7", "11", "19"})
+    public int size;
+
+    private Board[] boards;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Xoshiro256 random = new Xoshiro256(size);
+        boards = new Board[BOARDS];
+        for (int iCount = 0; iCount < BOARDS; iCount++) {
+            boards[iCount] = 
+                    RandomBoardGenerator.makeRandomBoard(size * size, size, random);
+        }
+    }
+
+    @Benchmark
+    public boolean didPlayerWin() {
+        next = (next + 1) & (BOARDS - 1);
+        return MonteCarlo.didPlayerWin(boards[next], (byte) 1);
+    }
+
+    @Benchmark
+    public boolean didPlayerWinRowScan() {
+        next = (next + 1) & (BOARDS - 1);
+        return MonteCarlo.didPlayerWinRowScan(boards[next], (byte) 1);
+    }
+}
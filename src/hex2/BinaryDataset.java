@@ -0,0 +1,163 @@
+package hex2;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A dataset in the binary format written by BinaryDatasetWriter, mapped into
+ * memory. Records are read straight from the mapped file, by their index,
+ * without any parsing. Files bigger than 2 GB are mapped in several parts.
+ *
+ * If the file was not closed properly and the header doesn't have the
+ * number of records, the records that are all there are used.
+ *
+ * Reading from a BinaryDataset is thread safe.
+ *
+ * @author Ljubo Raicevic <rljubo90@gmail.com>
+ */
+public class BinaryDataset {
+
+    private final int boardSize;
+    private final int recordBytes;
+    private final long noOfRecords;
+
+    /**
+     * The mapped parts of the file, each with recordsPerPart records (the
+     * last one can have less).
+     */
+    private final ByteBuffer[] parts;
+    private final int recordsPerPart;
+
+    /**
+     * Maps the file into memory.
+     *
+     * @param fileName Binary dataset file
+     * @throws IOException if the file can't be read
+     * @throws IllegalArgumentException if the file is not a binary dataset
+     */
+    public BinaryDataset(String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(
+                new File(fileName).toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(BinaryDatasetWriter.HEADER_BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) { }
+            header.flip();
+            if (header.remaining() < BinaryDatasetWriter.HEADER_BYTES
+                    || header.getInt() != BinaryDatasetWriter.MAGIC) {
+                throw new IllegalArgumentException(
+                        fileName + " is not a binary dataset.");
+            }
+            int version = header.getInt();
+            if (version != BinaryDatasetWriter.VERSION) {
+                throw new IllegalArgumentException(
+                        fileName + " has unknown version " + version + ".");
+            }
+            this.boardSize = header.getInt();
+            this.recordBytes = BinaryDatasetWriter.recordBytes(boardSize);
+
+            long complete = (channel.size() - BinaryDatasetWriter.HEADER_BYTES) / recordBytes;
+            long written = header.getLong();
+            this.noOfRecords = written > 0 ? Math.min(written, complete) : complete;
+
+            this.recordsPerPart = Integer.MAX_VALUE / recordBytes;
+            int noOfParts = (int) ((noOfRecords + recordsPerPart - 1) / recordsPerPart);
+            this.parts = new ByteBuffer[noOfParts];
+            for (int p = 0; p < noOfParts; p++) {
+                long first = (long) p * recordsPerPart;
+                long records = Math.min(recordsPerPart, noOfRecords - first);
+                MappedByteBuffer part = channel.map(FileChannel.MapMode.READ_ONLY,
+                        BinaryDatasetWriter.HEADER_BYTES + first * recordBytes,
+                        records * recordBytes);
+                parts[p] = part.order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+    }
+
+    public int getBoardSize() {
+        return boardSize;
+    }
+
+    public long getNoOfRecords() {
+        return noOfRecords;
+    }
+
+    /**
+     * Reads the fields of a record, the way toSingleRowString writes them.
+     *
+     * @param record Index of the record
+     * @param fields Array of boardSize^2 values that is filled with 0 for
+     * empty fields, 1 for the first and -1 for the second player
+     */
+    public void getFields(long record, byte[] fields) {
+        ByteBuffer part = parts[(int) (record / recordsPerPart)];
+        int offset = (int) (record % recordsPerPart) * recordBytes;
+
+        int packed = 0;
+        for (int i = 0; i < boardSize * boardSize; i++) {
+            if ((i & 3) == 0) { packed = part.get(offset + (i >>> 2)); }
+            int mark = (packed >>> ((i & 3) << 1)) & 3;
+            fields[i] = mark == 2 ? (byte) -1 : (byte) mark;
+        }
+    }
+
+    /**
+     * Reads the fields of a record as neural network inputs.
+     *
+     * @param record Index of the record
+     * @param inputs Array of boardSize^2 values that is filled with 0 for
+     * empty fields, 1 for the first and -1 for the second player
+     */
+    public void getInputs(long record, float[] inputs) {
+        ByteBuffer part = parts[(int) (record / recordsPerPart)];
+        int offset = (int) (record % recordsPerPart) * recordBytes;
+
+        int packed = 0;
+        for (int i = 0; i < boardSize * boardSize; i++) {
+            if ((i & 3) == 0) { packed = part.get(offset + (i >>> 2)); }
+            int mark = (packed >>> ((i & 3) << 1)) & 3;
+            inputs[i] = mark == 2 ? -1 : mark;
+        }
+    }
+
+    /**
+     * Reads the label of a record.
+     *
+     * @param record Index of the record
+     * @return Label
+     */
+    public float getLabel(long record) {
+        ByteBuffer part = parts[(int) (record / recordsPerPart)];
+        int offset = (int) (record % recordsPerPart) * recordBytes;
+        return part.getFloat(offset + recordBytes - 4);
+    }
+
+    /**
+     * Returns the indices of all of the records in random order, for going
+     * through the dataset shuffled.
+     *
+     * @param random Random number generator
+     * @return Shuffled indices
+     */
+    public int[] shuffledOrder(RandomSource random) {
+        if (noOfRecords > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many records to shuffle.");
+        }
+
+        int[] order = new int[(int) noOfRecords];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        for (int i = order.length - 1; i > 0; i--) {
+            int r = random.nextInt(i + 1);
+            int swap = order[r];
+            order[r] = order[i];
+            order[i] = swap;
+        }
+        return order;
+    }
+}
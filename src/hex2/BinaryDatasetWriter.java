@@ -0,0 +1,231 @@
+package hex2;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Writes a dataset in the binary format read by BinaryDataset, instead of
+ * the text written by Board.toSingleRowString.
+ *
+ * The file starts with a header: the magic number, the format version, the
+ * board size and the number of records. Every record then has the board,
+ * with 2 bits per field (0 empty, 1 the first player, 2 the second player,
+ * four fields to a byte, the first field in the lowest bits), followed by the
+ * label as a float. Everything is little-endian. The number of records in
+ * the header is written when the writer is closed.
+ *
+ * A BinaryDatasetWriter is not thread safe.
+ *
+ * @author Ljubo Raicevic <rljubo90@gmail.com>
+ */
+public class BinaryDatasetWriter implements Closeable {
+
+    /**
+     * "HEXD"
+     */
+    public static final int MAGIC = 0x44584548;
+    public static final int VERSION = 1;
+
+    /**
+     * Header: magic, version, board size (ints) and number of records (long).
+     */
+    public static final int HEADER_BYTES = 20;
+
+    /**
+     * Size of the write buffer.
+     */
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer =
+            ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private final int boardSize;
+    private final int recordBytes;
+    private final byte[] packed;
+    private long noOfRecords;
+
+    /**
+     * Creates the file, overwriting it if it exists.
+     *
+     * @param fileName File to write
+     * @param boardSize Board size of the records
+     * @throws IOException if the file can't be created
+     */
+    public BinaryDatasetWriter(String fileName, int boardSize) throws IOException {
+        this.boardSize = boardSize;
+        this.recordBytes = recordBytes(boardSize);
+        this.packed = new byte[recordBytes - 4];
+        this.channel = FileChannel.open(new File(fileName).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(boardSize);
+        buffer.putLong(0);
+    }
+
+    /**
+     * Size of a record.
+     *
+     * @param boardSize Board size
+     * @return Bytes per record
+     */
+    public static int recordBytes(int boardSize) {
+        return (boardSize * boardSize + 3) / 4 + 4;
+    }
+
+    public int getBoardSize() {
+        return boardSize;
+    }
+
+    public long getNoOfRecords() {
+        return noOfRecords;
+    }
+
+    /**
+     * Writes a record.
+     *
+     * @param b Board
+     * @param label Label of the board
+     * @throws IOException if writing fails
+     */
+    public void write(Board b, float label) throws IOException {
+        if (b.getSize() != boardSize) {
+            throw new IllegalArgumentException("Board size doesn't match.");
+        }
+
+        long[] v = b.getVerticalBits();
+        long[] h = b.getHorizontalBits();
+        clearPacked();
+        for (int i = 0; i < boardSize * boardSize; i++) {
+            long bit = 1L << i;
+            int mark = ((v[i >>> 6] & bit) != 0 ? 1 : 0)
+                    | ((h[i >>> 6] & bit) != 0 ? 2 : 0);
+            packed[i >>> 2] |= mark << ((i & 3) << 1);
+        }
+        writePacked(label);
+    }
+
+    /**
+     * Writes a record given the way toSingleRowString writes it.
+     *
+     * @param fields Fields, 0 empty, 1 the first player, -1 the second player
+     * @param label Label of the board
+     * @throws IOException if writing fails
+     */
+    public void write(byte[] fields, float label) throws IOException {
+        if (fields.length != boardSize * boardSize) {
+            throw new IllegalArgumentException("Board size doesn't match.");
+        }
+
+        clearPacked();
+        for (int i = 0; i < fields.length; i++) {
+            int mark = fields[i] == -1 ? 2 : fields[i];
+            packed[i >>> 2] |= mark << ((i & 3) << 1);
+        }
+        writePacked(label);
+    }
+
+    /**
+     * Flushes the records and writes their number to the header.
+     *
+     * @throws IOException if writing fails
+     */
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen()) { return; }
+
+        flush();
+        ByteBuffer count = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        count.putLong(0, noOfRecords);
+        channel.write(count, HEADER_BYTES - 8);
+        channel.close();
+    }
+
+    /**
+     * Converts text datasets (lines written by MonteCarlo: the fields the way
+     * toSingleRowString writes them, followed by the label) to a binary one.
+     * The board size is taken from the first line.
+     *
+     * @param textFiles Text files, for example the shards of a DatasetWriter
+     * @param fileName Binary file to write
+     * @return Number of records written
+     * @throws IOException if reading or writing fails
+     */
+    public static long convert(List<String> textFiles, String fileName)
+            throws IOException {
+        BinaryDatasetWriter writer = null;
+        byte[] fields = null;
+
+        try {
+            for (String textFile : textFiles) {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        new FileInputStream(textFile), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        String[] tokens = line.trim().split("\\s+");
+                        if (tokens.length < 2) { continue; }
+
+                        if (writer == null) {
+                            int boardSize = (int) Math.round(Math.sqrt(tokens.length - 1));
+                            writer = new BinaryDatasetWriter(fileName, boardSize);
+                            fields = new byte[boardSize * boardSize];
+                        }
+                        if (tokens.length != fields.length + 1) {
+                            throw new IOException(textFile + ": expected "
+                                    + (fields.length + 1) + " values, got "
+                                    + tokens.length + ".");
+                        }
+
+                        for (int i = 0; i < fields.length; i++) {
+                            fields[i] = Byte.parseByte(tokens[i]);
+                        }
+                        writer.write(fields, Float.parseFloat(
+                                tokens[fields.length].replace(',', '.')));
+                    }
+                }
+            }
+        } finally {
+            if (writer != null) { writer.close(); }
+        }
+
+        return writer == null ? 0 : writer.getNoOfRecords();
+    }
+
+    private void clearPacked() {
+        for (int k = 0; k < packed.length; k++) {
+            packed[k] = 0;
+        }
+    }
+
+    private void writePacked(float label) throws IOException {
+        if (buffer.remaining() < recordBytes) {
+            flush();
+        }
+        buffer.put(packed);
+        buffer.putFloat(label);
+        noOfRecords++;
+    }
+
+    /**
+     * Writes the buffer to the file.
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
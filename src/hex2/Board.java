@@ -1,18 +1,47 @@
 package hex2;
 
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
 /**
+ * Hex board. Fields are stored as two bitboards, one bit per field, where the
+ * field (row, col) is bit row * size + col. A field marked 1 has its bit set
+ * only in the first bitboard, a field marked 2 only in the second one.
+ *
+ * The board also keeps a Zobrist hash of its fields, which is updated with
+ * every mark that's put or removed, so it can be used as a key of a
+ * PositionCache.
+ *
+ * The empty fields are kept in a dense list of field indices, together with
+ * the position of every field in the list, so putting or removing a mark
+ * updates the list in O(1) (the removed field is replaced by the last one).
+ * The list can be read without copying it, and a random empty field can be
+ * picked in O(1). The list is in no particular order.
+ *
+ * A board is copied with bulk array copies (deepCopy, copyFrom). A snapshot
+ * doesn't even copy them: the snapshot and the board share their arrays
+ * until one of them changes, and the one that changes copies them first, so
+ * neither of them sees the other's changes.
  *
  * @author Ljubo Raicevic <rljubo90@gmail.com>
  */
 public class Board {
     /**
-     * Matrix of bytes representing past players' past moves.
+     * Bitboard of the fields marked by the first (vertical) player.
+     */
+    private long[] vertical;
+    
+    /**
+     * Bitboard of the fields marked by the second (horizontal) player.
      */
-    private byte[][] matrix;
+    private long[] horizontal;
 
     /**
-     * Number of empty fields left on the board.
+     * Indices of the empty fields, the first noOfEmptyFields of them, and the
+     * position of every field in that list (-1 for marked fields).
      */
+    private int[] empties;
+    private int[] emptyPosition;
     private int noOfEmptyFields;
 
     /**
@@ -25,16 +54,66 @@ public class Board {
      */
     private byte nextMovePlayer;
     
+    /**
+     * Zobrist hash of the fields, XOR of the keys of all of the marked ones.
+     */
+    private long hash;
+    
+    /**
+     * Zobrist keys for this board size, the key of mark m on field i is
+     * zobristKeys[i * 4 + m].
+     */
+    private long[] zobristKeys;
+    
+    /**
+     * Neighbors and edges of the fields for this board size.
+     */
+    private BoardGeometry geometry;
+    
+    /**
+     * Are the arrays shared with a snapshot (or with the board this is a
+     * snapshot of), so that they have to be copied before they're changed.
+     */
+    private boolean shared;
+    
+    /**
+     * Largest board size, so that a row of the board always fits in a long.
+     */
+    public static final int MAX_SIZE = 63;
+    
+    /**
+     * Zobrist keys for every board size, made when they're first needed.
+     */
+    private static final long[][] ZOBRIST_KEYS = new long[MAX_SIZE + 1][];
+    
+    /**
+     * Added to the hash when the second player is on the move.
+     */
+    static final long SECOND_PLAYER_KEY = 0x6A09E667F3BCC909L;
+    
     /**
      * Initializes an empty Board.
      *
-     * @param size board size
+     * @param size board size, between 1 and MAX_SIZE
      */
     public Board(int size) {
-        this.matrix = new byte[size][size];
+        if (size < 1 || size > MAX_SIZE) {
+            throw new IllegalArgumentException(
+                    "size has to be between 1 and " + MAX_SIZE + ".");
+        }
+        this.vertical = new long[wordsFor(size)];
+        this.horizontal = new long[wordsFor(size)];
         this.size = size;
-        this.noOfEmptyFields = size * size;
         this.nextMovePlayer = 1;
+        this.zobristKeys = zobristKeysFor(size);
+        this.geometry = BoardGeometry.forSize(size);
+        this.empties = new int[size * size];
+        this.emptyPosition = new int[size * size];
+        this.noOfEmptyFields = size * size;
+        for (int i = 0; i < size * size; i++) {
+            empties[i] = i;
+            emptyPosition[i] = i;
+        }
     }
     
     /**
@@ -45,20 +124,83 @@ public class Board {
      * @param movesPlayed How many moves have been played so far
      */
     public Board(int size, byte[] sequence, int movesPlayed) {
+        this(size, sequence, (byte) (movesPlayed % 2 + 1));
+    }
+    
+    /**
+     * Makes a new board from a byte array, with the given player on the move.
+     * 
+     * @param size Board size
+     * @param sequence Byte array (marks of the fields)
+     * @param nextMovePlayer Player on the move
+     */
+    Board(int size, byte[] sequence, byte nextMovePlayer) {
         this(size);
         
         //overlay the sequence over the board
         for (int iCount = 0; iCount < sequence.length; iCount++) {
-            Coordinate c = this.intToCoordinate(iCount);
-            this.matrix[c.row][c.col] = sequence[iCount];
+            this.setField(iCount, sequence[iCount]);
         }
         
-        this.noOfEmptyFields = size * size - movesPlayed;
-        this.nextMovePlayer = (byte) (movesPlayed % 2 + 1);
+        this.nextMovePlayer = nextMovePlayer;
+    }
+    
+    /**
+     * Makes a copy of the other board.
+     * 
+     * @param other Board to be copied
+     * @param share Should the arrays be shared instead of copied
+     */
+    private Board(Board other, boolean share) {
+        this.vertical = share ? other.vertical : other.vertical.clone();
+        this.horizontal = share ? other.horizontal : other.horizontal.clone();
+        this.size = other.size;
+        this.nextMovePlayer = other.nextMovePlayer;
+        this.hash = other.hash;
+        this.zobristKeys = other.zobristKeys;
+        this.geometry = other.geometry;
+        this.empties = share ? other.empties : other.empties.clone();
+        this.emptyPosition = share ? other.emptyPosition : other.emptyPosition.clone();
+        this.noOfEmptyFields = other.noOfEmptyFields;
+        this.shared = share;
+    }
+    
+    /**
+     * Number of longs needed for a bitboard of a board of the given size.
+     * 
+     * @param size Board size
+     * @return Number of longs
+     */
+    static int wordsFor(int size) {
+        return (size * size + 63) >>> 6;
+    }
+    
+    /**
+     * Zobrist keys for boards of the given size. They're always the same, so
+     * hashes can be compared between runs.
+     * 
+     * @param size Board size
+     * @return Keys, the key of mark m on field i is at i * 4 + m
+     */
+    static synchronized long[] zobristKeysFor(int size) {
+        if (ZOBRIST_KEYS[size] == null) {
+            Xoshiro256 random = new Xoshiro256(0x5A0B0157L + size);
+            long[] keys = new long[size * size * 4];
+            for (int i = 0; i < keys.length; i++) {
+                //empty fields don't change the hash
+                keys[i] = (i & 3) == 0 ? 0 : random.nextLong();
+            }
+            ZOBRIST_KEYS[size] = keys;
+        }
+        return ZOBRIST_KEYS[size];
     }
     
     public boolean isFieldVertical(Coordinate c) {
-        return matrix[c.row][c.col] == 1;
+        return isFieldVertical(c.row * size + c.col);
+    }
+    
+    public boolean isFieldVertical(int i) {
+        return getField(i) == 1;
     }
     
     public int getSize() {
@@ -70,7 +212,115 @@ public class Board {
     }
     
     public byte getFieldMark(Coordinate c) {
-        return this.matrix[c.row][c.col];
+        return getField(c.row * size + c.col);
+    }
+    
+    /**
+     * Mark of the field.
+     * 
+     * @param i Index of the field, row * size + col
+     * @return 0 if the field is empty, 1 or 2 otherwise
+     */
+    public byte getFieldMark(int i) {
+        return getField(i);
+    }
+    
+    /**
+     * Neighbors and edges of the fields, shared by all boards of this size.
+     * 
+     * @return Geometry of the board
+     */
+    public BoardGeometry getGeometry() {
+        return geometry;
+    }
+    
+    /**
+     * Zobrist hash of the position: the marks on the fields and the player
+     * on the move.
+     * 
+     * @return Hash of the position
+     */
+    public long getZobristHash() {
+        return nextMovePlayer == 2 ? hash ^ SECOND_PLAYER_KEY : hash;
+    }
+    
+    /**
+     * Bitboard of the first player's fields. The array is not copied, so it
+     * must not be modified.
+     * 
+     * @return Bitboard of the first player
+     */
+    long[] getVerticalBits() {
+        return vertical;
+    }
+    
+    /**
+     * Bitboard of the second player's fields. The array is not copied, so it
+     * must not be modified.
+     * 
+     * @return Bitboard of the second player
+     */
+    long[] getHorizontalBits() {
+        return horizontal;
+    }
+    
+    /**
+     * Reads the mark of the field from the bitboards.
+     * 
+     * @param i Index of the field, row * size + col
+     * @return Mark of the field
+     */
+    private byte getField(int i) {
+        int word = i >>> 6;
+        return (byte) ((int) (vertical[word] >>> i) & 1 
+                | ((int) (horizontal[word] >>> i) & 1) << 1);
+    }
+    
+    /**
+     * Writes the mark of the field to the bitboards. Bit 0 of the mark goes to
+     * the first bitboard and bit 1 to the second one. Updates the hash and
+     * the list of empty fields.
+     * 
+     * @param i Index of the field, row * size + col
+     * @param mark Mark of the field
+     */
+    private void setField(int i, byte mark) {
+        if (shared) {
+            unshare();
+        }
+        byte old = getField(i);
+        hash ^= zobristKeys[(i << 2) | old] ^ zobristKeys[(i << 2) | (mark & 3)];
+        
+        if (old == 0 && (mark & 3) != 0) {
+            //the last empty field takes the place of this one
+            int last = empties[--noOfEmptyFields];
+            int position = emptyPosition[i];
+            empties[position] = last;
+            emptyPosition[last] = position;
+            emptyPosition[i] = -1;
+        } else if (old != 0 && (mark & 3) == 0) {
+            empties[noOfEmptyFields] = i;
+            emptyPosition[i] = noOfEmptyFields++;
+        }
+        
+        int word = i >>> 6;
+        long bit = 1L << i;
+        vertical[word] = (mark & 1) != 0 
+                ? vertical[word] | bit : vertical[word] & ~bit;
+        horizontal[word] = (mark & 2) != 0 
+                ? horizontal[word] | bit : horizontal[word] & ~bit;
+    }
+    
+    /**
+     * Copies the arrays that are shared with a snapshot, so that they can be
+     * changed.
+     */
+    private void unshare() {
+        vertical = vertical.clone();
+        horizontal = horizontal.clone();
+        empties = empties.clone();
+        emptyPosition = emptyPosition.clone();
+        shared = false;
     }
     
     /**
@@ -80,7 +330,17 @@ public class Board {
      * @return true if field has been marked, false otherwise
      */
     public boolean isFieldMarked(Coordinate c) {
-        return matrix[c.row][c.col] != 0;
+        return isFieldMarked(c.row * size + c.col);
+    }
+    
+    /**
+     * Checks if a field has already been marked.
+     *
+     * @param i Index of the field, row * size + col
+     * @return true if field has been marked, false otherwise
+     */
+    public boolean isFieldMarked(int i) {
+        return ((vertical[i >>> 6] | horizontal[i >>> 6]) & (1L << i)) != 0;
     }
     
     /**
@@ -103,6 +363,16 @@ public class Board {
                 && c.col < size && !isFieldMarked(c);
     }
     
+    /**
+     * Checks if the move is legal.
+     * 
+     * @param i Index of the field played, row * size + col
+     * @return true if move is legal, false otherwise
+     */
+    public boolean isMoveLegal(int i) {
+        return i >= 0 && i < size * size && !isFieldMarked(i);
+    }
+    
     /**
      * Puts a "mark" on a field
      *
@@ -111,10 +381,20 @@ public class Board {
      * @return true if move is legal, false otherwise
      */
     public boolean putMark(Coordinate c, byte mark) {
+        return putMark(c.row * size + c.col, mark);
+    }
+    
+    /**
+     * Puts a "mark" on a field
+     *
+     * @param i Index of the field, row * size + col
+     * @param mark of the player - 1 or 2
+     * @return true if move is legal, false otherwise
+     */
+    public boolean putMark(int i, byte mark) {
         //if the field is empty
-        if (!isFieldMarked(c)) {
-            noOfEmptyFields--;
-            putMarkHard(c, mark);
+        if (!isFieldMarked(i)) {
+            putMarkHard(i, mark);
             return true;
         }
 
@@ -124,7 +404,8 @@ public class Board {
     
     /**
      * Puts a "mark" on a field without checking if the field has been marked.
-     * Also, it doesn't lower noOfEmptyFields. 
+     * The number and the list of empty fields are still kept up to date, and
+     * mark 0 removes the mark.
      * THIS METHOD SHOULD ONLY BE USED FROM MonteCarlo.java AND 
      * PlayerNeuralNetwork, WHEN EVALUATING THE BOARD.
      *
@@ -132,7 +413,17 @@ public class Board {
      * @param mark of the player - 1 or 2
      */
     public void putMarkHard(Coordinate c, byte mark) {
-        matrix[c.row][c.col] = mark;  //mark it
+        putMarkHard(c.row * size + c.col, mark);
+    }
+    
+    /**
+     * Same as putMarkHard(Coordinate, byte), with the index of the field.
+     *
+     * @param i Index of the field, row * size + col
+     * @param mark of the player - 1 or 2
+     */
+    public void putMarkHard(int i, byte mark) {
+        setField(i, mark);  //mark it
         nextMovePlayer = calculateNextPlayer(nextMovePlayer);
     }
     
@@ -148,39 +439,111 @@ public class Board {
      * previously), false otherwise.
      */
     public boolean removeMark(Coordinate c){
-        if(!isFieldMarked(c)){
+        return removeMark(c.row * size + c.col);
+    }
+    
+    /**
+     * Does the opposite of putMark
+     * 
+     * @param i Index of the field from which the mark should be removed
+     * @return true if mark was removed (if the field has been marked
+     * previously), false otherwise.
+     */
+    public boolean removeMark(int i){
+        if(!isFieldMarked(i)){
             return false;
         } else {
-            matrix[c.row][c.col] = 0;
-            noOfEmptyFields++;
-            nextMovePlayer = (byte) ((nextMovePlayer + 1) % 2);
+            setField(i, (byte) 0);
+            nextMovePlayer = calculateNextPlayer(nextMovePlayer);
             return true;
         }
     }
     
     /**
-     * Returns an array with coordinates of empty fields on the board.
-     * O(size^2)
+     * Returns an array with coordinates of empty fields on the board, in the
+     * order of the list of empty fields. Allocates a Coordinate for every
+     * empty field, getEmptyField and getEmptyFieldIndices don't.
      *
      * @return Array of coordinates of empty fields
      */
     public Coordinate[] getEmptyFields() {
         Coordinate[] result = new Coordinate[noOfEmptyFields];
-
-        int count = 0;
-        //for each field on the board
-        for (int row = 0; row < size; row++) {
-            for (int col = 0; col < size; col++) {
-
-                //if the field is empty, add it
-                if (matrix[row][col] == 0) {
-                    result[count] = new Coordinate(row, col);
-                    count++;
+        for (int k = 0; k < noOfEmptyFields; k++) {
+            result[k] = new Coordinate(empties[k] / size, empties[k] % size);
+        }
+        return result;
+    }
+    
+    /**
+     * Iterates over the indices of the empty fields, in the order of the list
+     * of empty fields, without boxing them. The board must not change while
+     * iterating.
+     * 
+     * @return Iterator over the indices of the empty fields
+     */
+    public PrimitiveIterator.OfInt emptyFieldIterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int k = 0;
+            
+            @Override
+            public boolean hasNext() {
+                return k < noOfEmptyFields;
+            }
+            
+            @Override
+            public int nextInt() {
+                if (k >= noOfEmptyFields) {
+                    throw new NoSuchElementException();
                 }
+                return empties[k++];
             }
+        };
+    }
+    
+    /**
+     * Returns an empty field from the list of empty fields.
+     * 
+     * @param k Between 0 and getNoOfEmptyFields() - 1
+     * @return Index of the field, row * size + col
+     */
+    public int getEmptyField(int k) {
+        return empties[k];
+    }
+    
+    /**
+     * The list of empty fields itself: the first getNoOfEmptyFields() entries
+     * are the indices of the empty fields (row * size + col). The array is
+     * not copied, so it must not be modified, and it should not be kept after
+     * the board changes (it may be copied on the change, see snapshot).
+     * 
+     * @return Indices of the empty fields
+     */
+    public int[] getEmptyFieldIndices() {
+        return empties;
+    }
+    
+    /**
+     * Picks one of the empty fields, every one with the same probability.
+     * 
+     * @param random Source of random numbers
+     * @return Index of the field, row * size + col
+     * @throws IllegalStateException if the board is full
+     */
+    public int getRandomEmptyField(RandomSource random) {
+        if (noOfEmptyFields == 0) {
+            throw new IllegalStateException("There are no empty fields.");
         }
-
-        return result;
+        return empties[random.nextInt(noOfEmptyFields)];
+    }
+    
+    /**
+     * Position of the field in the list of empty fields.
+     * 
+     * @param i Index of the field, row * size + col
+     * @return Position in getEmptyFieldIndices(), -1 if the field is marked
+     */
+    public int getEmptyFieldPosition(int i) {
+        return emptyPosition[i];
     }
     
     /**
@@ -189,19 +552,52 @@ public class Board {
      * @return A deep copy of itself
      */
     public Board deepCopy() {
-        Board result = new Board(this.size);
-        
-        for (int row = 0; row < size; row++) {
-            for (int col = 0; col < size; col++) {
-                Coordinate c = new Coordinate(row, col);
-                result.putMark(c, this.matrix[c.row][c.col]);
-            }
+        return new Board(this, false);
+    }
+    
+    /**
+     * Makes a copy of itself that shares the arrays with this board until
+     * one of the two boards changes (copy on write), so taking a snapshot
+     * costs the same for all board sizes. A snapshot is as good as a deep
+     * copy: changes to one of the boards are never seen by the other one, and
+     * the snapshot can be handed to another thread.
+     * 
+     * @return Snapshot of the board
+     */
+    public Board snapshot() {
+        shared = true;
+        return new Board(this, true);
+    }
+    
+    /**
+     * Makes this board the same as the other one. The arrays of this board
+     * are reused (unless they're shared with a snapshot), so a board that's
+     * copied into over and over again doesn't allocate anything.
+     * 
+     * @param other Board of the same size
+     */
+    public void copyFrom(Board other) {
+        if (other.size != size) {
+            throw new IllegalArgumentException("Board size doesn't match.");
+        }
+        if (other == this) {
+            return;
+        }
+        if (shared) {
+            vertical = new long[vertical.length];
+            horizontal = new long[horizontal.length];
+            empties = new int[empties.length];
+            emptyPosition = new int[emptyPosition.length];
+            shared = false;
         }
         
-        result.noOfEmptyFields = this.noOfEmptyFields;
-        result.nextMovePlayer = this.nextMovePlayer;
-        
-        return result;
+        System.arraycopy(other.vertical, 0, vertical, 0, vertical.length);
+        System.arraycopy(other.horizontal, 0, horizontal, 0, horizontal.length);
+        System.arraycopy(other.empties, 0, empties, 0, other.noOfEmptyFields);
+        System.arraycopy(other.emptyPosition, 0, emptyPosition, 0, emptyPosition.length);
+        noOfEmptyFields = other.noOfEmptyFields;
+        nextMovePlayer = other.nextMovePlayer;
+        hash = other.hash;
     }
     
     /**
@@ -223,6 +619,17 @@ public class Board {
         Coordinate result = new Coordinate(row, col);
         return result;
     }
+
+    /**
+     * Does the opposite of intToCoordinate: (1,1) on a 3x3 board will produce
+     * 4.
+     *
+     * @param c Coordinates of the field
+     * @return Index of the field, row * size + col
+     */
+    public final int coordinateToInt(Coordinate c) {
+        return c.row * size + c.col;
+    }
     
     /**
      * Converts the board to a single row String of -1s, 0s and 1s. Used for
@@ -234,16 +641,15 @@ public class Board {
     public String toSingleRowString(boolean reversePlayers) {
         StringBuilder sb = new StringBuilder();
         
-        for (byte[] row : matrix) {
-            for (byte field : row) {
-                byte b = field;
-                if (field > 0 && reversePlayers) {
-                    b = (byte)(1 + Math.abs(field - 2));
-                }
-                if (b == 2) { b = -1; }
-                sb.append(b);
-                sb.append(" ");
+        for (int i = 0; i < size * size; i++) {
+            byte field = getField(i);
+            byte b = field;
+            if (field > 0 && reversePlayers) {
+                b = (byte)(1 + Math.abs(field - 2));
             }
+            if (b == 2) { b = -1; }
+            sb.append(b);
+            sb.append(" ");
         }
         
         return sb.toString();
@@ -267,7 +673,7 @@ public class Board {
             }
 
             for (int col = 0; col < size; col++) {
-                sb.append(matrix[row][col]).append(" ");
+                sb.append(getField(row * size + col)).append(" ");
             }
 
             sb.append(System.lineSeparator());
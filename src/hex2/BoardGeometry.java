@@ -0,0 +1,279 @@
+package hex2;
+
+/**
+ * Everything about a board of some size that doesn't depend on the marks on
+ * it: the neighbors of every field, which edges every field is on, the
+ * bitboard masks of the edges and the bridge table. It's made once per board
+ * size and shared by everyone (Board, Game, Playout, WinDetector and
+ * MonteCarlo), so none of them has to check the bounds of the board or make
+ * Coordinates to find a neighbor.
+ *
+ * A field (row, col) is index row * size + col. Its six neighbors are listed
+ * in order around the field, so that every neighbor is next to the previous
+ * one:
+ * <pre>
+ *   d = 0: (row - 1, col)       d = 3: (row + 1, col)
+ *   d = 1: (row - 1, col + 1)   d = 4: (row + 1, col - 1)
+ *   d = 2: (row, col + 1)       d = 5: (row, col - 1)
+ * </pre>
+ * A neighbor that's off the board is one of the four edges instead, which
+ * come right after the last field: size * size + TOP, + BOTTOM, + LEFT and
+ * + RIGHT. That's the same as the added nodes of the union-finds in Game and
+ * Playout, so a field can be connected to its neighbors and to its edges in
+ * the same loop. The top and the bottom edge belong to the first player, the
+ * left and the right edge to the second one.
+ *
+ * A BoardGeometry is immutable. The arrays returned by the package-private
+ * getters are not copied, so they must not be modified.
+ *
+ * @author Ljubo Raicevic <rljubo90@gmail.com>
+ */
+public final class BoardGeometry {
+
+    /**
+     * Edges, the edge e is the node size * size + e.
+     */
+    public static final int TOP = 0;
+    public static final int BOTTOM = 1;
+    public static final int LEFT = 2;
+    public static final int RIGHT = 3;
+
+    /**
+     * Changes of the row and of the column in every direction.
+     */
+    private static final int[] D_ROW = { -1, -1, 0, 1, 1, 0 };
+    private static final int[] D_COL = { 0, 1, 1, 0, -1, -1 };
+
+    /**
+     * Geometry for every board size, made when they're first needed.
+     */
+    private static final BoardGeometry[] GEOMETRIES =
+            new BoardGeometry[Board.MAX_SIZE + 1];
+
+    /**
+     * Bridges for every set of neighbors a player has: bit d of
+     * BRIDGES[owned] is set if the neighbors d - 1 and d + 1 (around the
+     * field) are both in owned, since they're bridged through the field and
+     * neighbor d.
+     */
+    private static final int[] BRIDGES = new int[64];
+
+    static {
+        for (int owned = 0; owned < 64; owned++) {
+            int previous = ((owned << 1) | (owned >>> 5)) & 63;
+            int next = ((owned >>> 1) | (owned << 5)) & 63;
+            BRIDGES[owned] = previous & next;
+        }
+    }
+
+    /**
+     * Board side size and number of fields.
+     */
+    private final int size;
+    private final int fields;
+
+    /**
+     * Entry field * 6 + d is the neighbor of the field in direction d.
+     */
+    private final int[] neighbors;
+
+    /**
+     * Edges of every field, bit e is set if the field is on the edge e.
+     */
+    private final byte[] edges;
+
+    /**
+     * Masks of the fields that are not in the first or in the last column.
+     */
+    private final long[] notFirstCol;
+    private final long[] notLastCol;
+
+    /**
+     * Masks of the fields in the first and last row, and in the first and
+     * last column.
+     */
+    private final long[] firstRow;
+    private final long[] lastRow;
+    private final long[] firstCol;
+    private final long[] lastCol;
+
+    /**
+     * Initializes the geometry of the board size.
+     *
+     * @param size Board size
+     */
+    private BoardGeometry(int size) {
+        int words = Board.wordsFor(size);
+        this.size = size;
+        this.fields = size * size;
+        this.neighbors = new int[fields * 6];
+        this.edges = new byte[fields];
+        this.notFirstCol = new long[words];
+        this.notLastCol = new long[words];
+        this.firstRow = new long[words];
+        this.lastRow = new long[words];
+        this.firstCol = new long[words];
+        this.lastCol = new long[words];
+
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                int i = row * size + col;
+                for (int d = 0; d < 6; d++) {
+                    int r = row + D_ROW[d];
+                    int c = col + D_COL[d];
+                    neighbors[i * 6 + d] = r < 0 ? fields + TOP
+                            : r >= size ? fields + BOTTOM
+                            : c < 0 ? fields + LEFT
+                            : c >= size ? fields + RIGHT
+                            : r * size + c;
+                }
+
+                if (row == 0)        { edges[i] |= 1 << TOP; }
+                if (row == size - 1) { edges[i] |= 1 << BOTTOM; }
+                if (col == 0)        { edges[i] |= 1 << LEFT; }
+                if (col == size - 1) { edges[i] |= 1 << RIGHT; }
+
+                if (col != 0)        { set(notFirstCol, i); }
+                if (col != size - 1) { set(notLastCol, i); }
+                if (row == 0)        { set(firstRow, i); }
+                if (row == size - 1) { set(lastRow, i); }
+                if (col == 0)        { set(firstCol, i); }
+                if (col == size - 1) { set(lastCol, i); }
+            }
+        }
+    }
+
+    /**
+     * Returns the geometry of the board size.
+     *
+     * @param size Board size, between 1 and Board.MAX_SIZE
+     * @return Geometry of the board size
+     */
+    public static synchronized BoardGeometry forSize(int size) {
+        if (size < 1 || size > Board.MAX_SIZE) {
+            throw new IllegalArgumentException(
+                    "size has to be between 1 and " + Board.MAX_SIZE + ".");
+        }
+        if (GEOMETRIES[size] == null) {
+            GEOMETRIES[size] = new BoardGeometry(size);
+        }
+        return GEOMETRIES[size];
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Number of fields, which is also the node of the first edge.
+     *
+     * @return size * size
+     */
+    public int getNoOfFields() {
+        return fields;
+    }
+
+    /**
+     * Neighbor of the field in the direction.
+     *
+     * @param field Index of the field, row * size + col
+     * @param d Direction, between 0 and 5
+     * @return Index of the neighbor, or the node of an edge if it's off the
+     * board
+     */
+    public int getNeighbor(int field, int d) {
+        return neighbors[field * 6 + d];
+    }
+
+    /**
+     * Node of the edge, used in place of the fields behind it.
+     *
+     * @param edge TOP, BOTTOM, LEFT or RIGHT
+     * @return size * size + edge
+     */
+    public int getEdgeNode(int edge) {
+        return fields + edge;
+    }
+
+    /**
+     * Checks if the index is one of the edges instead of a field.
+     *
+     * @param i Index of a field or of an edge
+     * @return true if it's an edge
+     */
+    public boolean isEdgeNode(int i) {
+        return i >= fields;
+    }
+
+    /**
+     * Player whose edge it is.
+     *
+     * @param edge TOP, BOTTOM, LEFT or RIGHT
+     * @return 1 for the top and the bottom edge, 2 for the left and the right
+     */
+    public static byte getEdgeOwner(int edge) {
+        return (byte) (edge < LEFT ? 1 : 2);
+    }
+
+    /**
+     * Edges the field is on.
+     *
+     * @param field Index of the field
+     * @return Bit e is set if the field is on the edge e
+     */
+    public int getEdges(int field) {
+        return edges[field];
+    }
+
+    /**
+     * Bridges for the set of neighbors a player has.
+     *
+     * @param owned Bit d is set if the player has the neighbor d
+     * @return Bit d is set if neighbor d is between two of the owned
+     * neighbors, so playing the field and neighbor d saves their bridge
+     */
+    public static int getBridges(int owned) {
+        return BRIDGES[owned];
+    }
+
+    /**
+     * The whole neighbor table, entry field * 6 + d is the neighbor of the
+     * field in direction d. Not copied.
+     *
+     * @return Neighbor table
+     */
+    int[] getNeighbors() {
+        return neighbors;
+    }
+
+    /**
+     * Bitboard masks of the board, not copied.
+     */
+    long[] getNotFirstColMask() {
+        return notFirstCol;
+    }
+
+    long[] getNotLastColMask() {
+        return notLastCol;
+    }
+
+    long[] getFirstRowMask() {
+        return firstRow;
+    }
+
+    long[] getLastRowMask() {
+        return lastRow;
+    }
+
+    long[] getFirstColMask() {
+        return firstCol;
+    }
+
+    long[] getLastColMask() {
+        return lastCol;
+    }
+
+    private static void set(long[] bits, int i) {
+        bits[i >>> 6] |= 1L << i;
+    }
+}
@@ -0,0 +1,215 @@
+package hex2;
+
+/**
+ * Symmetries of the Hex board. Turning the board by 180 degrees doesn't
+ * change the game. Transposing it (field (row, col) goes to (col, row)) turns
+ * the top and bottom rows into the left and right columns, so together with
+ * swapping the players' marks and the player on the move it doesn't change
+ * the game either. With the two combined, every position has up to four
+ * equivalent ones, and the player on the move has the same chances in all of
+ * them.
+ *
+ * The canonical form of a position is the equivalent position with the
+ * smallest Zobrist hash, so equivalent positions have the same canonical
+ * hash.
+ *
+ * @author Ljubo Raicevic <rljubo90@gmail.com>
+ */
+public enum BoardSymmetry {
+
+    /**
+     * (row, col) stays (row, col).
+     */
+    IDENTITY(false),
+
+    /**
+     * (row, col) goes to (size - 1 - row, size - 1 - col).
+     */
+    ROTATE_180(false),
+
+    /**
+     * (row, col) goes to (col, row), and the players are swapped.
+     */
+    TRANSPOSE_SWAP(true),
+
+    /**
+     * (row, col) goes to (size - 1 - col, size - 1 - row), and the players
+     * are swapped.
+     */
+    ANTI_TRANSPOSE_SWAP(true);
+
+    private static final BoardSymmetry[] ALL = values();
+
+    private final boolean swapsPlayers;
+
+    private BoardSymmetry(boolean swapsPlayers) {
+        this.swapsPlayers = swapsPlayers;
+    }
+
+    /**
+     * Does the symmetry swap the players.
+     *
+     * @return true if the marks and the player on the move are swapped
+     */
+    public boolean swapsPlayers() {
+        return swapsPlayers;
+    }
+
+    /**
+     * The symmetry that takes the board back. Every one of them is its own
+     * inverse.
+     *
+     * @return Inverse symmetry
+     */
+    public BoardSymmetry inverse() {
+        return this;
+    }
+
+    /**
+     * Where the field goes.
+     *
+     * @param i Index of the field, row * size + col
+     * @param size Board size
+     * @return Index of the field it goes to
+     */
+    public int mapField(int i, int size) {
+        switch (this) {
+            case ROTATE_180:
+                return size * size - 1 - i;
+            case TRANSPOSE_SWAP:
+                return (i % size) * size + i / size;
+            case ANTI_TRANSPOSE_SWAP:
+                return (size - 1 - i % size) * size + (size - 1 - i / size);
+            default:
+                return i;
+        }
+    }
+
+    /**
+     * Where the field goes.
+     *
+     * @param c Coordinates of the field
+     * @param size Board size
+     * @return Coordinates of the field it goes to
+     */
+    public Coordinate map(Coordinate c, int size) {
+        int i = mapField(c.row * size + c.col, size);
+        return new Coordinate(i / size, i % size);
+    }
+
+    /**
+     * What the mark becomes.
+     *
+     * @param mark 0, 1 or 2
+     * @return Mark after the symmetry, 1 and 2 swapped if the symmetry swaps
+     * the players
+     */
+    public byte mapMark(byte mark) {
+        if (!swapsPlayers) { return mark; }
+        return mark == 1 ? 2 : mark == 2 ? 1 : mark;
+    }
+
+    /**
+     * Makes the equivalent board.
+     *
+     * @param b Board
+     * @return New board, the symmetry applied to b (a deep copy of b for
+     * IDENTITY)
+     */
+    public Board apply(Board b) {
+        if (this == IDENTITY) {
+            return b.deepCopy();
+        }
+        
+        int size = b.getSize();
+        long[] v = b.getVerticalBits();
+        long[] h = b.getHorizontalBits();
+        byte[] sequence = new byte[size * size];
+
+        for (int i = 0; i < size * size; i++) {
+            sequence[mapField(i, size)] = mapMark(mark(v, h, i));
+        }
+
+        return new Board(size, sequence, mapMark(b.whosOnTheMove()));
+    }
+
+    /**
+     * Zobrist hash of the equivalent board, without making it.
+     *
+     * @param b Board
+     * @return Same as apply(b).getZobristHash()
+     */
+    public long hash(Board b) {
+        int size = b.getSize();
+        long[] keys = Board.zobristKeysFor(size);
+        long[] v = b.getVerticalBits();
+        long[] h = b.getHorizontalBits();
+        long result = 0;
+
+        for (int w = 0; w < v.length; w++) {
+            long marked = v[w] | h[w];
+            while (marked != 0) {
+                int i = (w << 6) + Long.numberOfTrailingZeros(marked);
+                result ^= keys[(mapField(i, size) << 2) | mapMark(mark(v, h, i))];
+                marked &= marked - 1;
+            }
+        }
+
+        return mapMark(b.whosOnTheMove()) == 2
+                ? result ^ Board.SECOND_PLAYER_KEY : result;
+    }
+
+    /**
+     * Is the board the same after the symmetry, including the player on the
+     * move. Only IDENTITY and ROTATE_180 can be, since the others swap the
+     * player on the move.
+     *
+     * @param b Board
+     * @return true if apply(b) would be the same position as b
+     */
+    public boolean isSymmetric(Board b) {
+        if (swapsPlayers) { return false; }
+
+        int size = b.getSize();
+        long[] v = b.getVerticalBits();
+        long[] h = b.getHorizontalBits();
+        for (int i = 0; i < size * size; i++) {
+            if (mark(v, h, i) != mark(v, h, mapField(i, size))) { return false; }
+        }
+        return true;
+    }
+
+    /**
+     * The symmetry that makes the canonical form of the board.
+     *
+     * @param b Board
+     * @return Symmetry whose board has the smallest hash
+     */
+    public static BoardSymmetry canonical(Board b) {
+        BoardSymmetry best = IDENTITY;
+        long bestHash = b.getZobristHash();
+        for (int t = 1; t < ALL.length; t++) {
+            long hash = ALL[t].hash(b);
+            if (Long.compareUnsigned(hash, bestHash) < 0) {
+                best = ALL[t];
+                bestHash = hash;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Zobrist hash of the canonical form of the board, the same for all of
+     * the equivalent positions.
+     *
+     * @param b Board
+     * @return Canonical hash
+     */
+    public static long canonicalHash(Board b) {
+        return canonical(b).hash(b);
+    }
+
+    private static byte mark(long[] v, long[] h, int i) {
+        return (byte) ((int) (v[i >>> 6] >>> i) & 1 | ((int) (h[i >>> 6] >>> i) & 1) << 1);
+    }
+}
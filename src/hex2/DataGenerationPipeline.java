@@ -0,0 +1,335 @@
+package hex2;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates data from Monte Carlo simulations of random boards (like
+ * Hex2.randomDataGeneration) on several workers at once.
+ *
+ * Every worker is a lane of two threads: a generator that makes up random
+ * boards and puts them into a bounded queue, and an evaluator that takes
+ * them from the queue, evaluates them and writes the data to the worker's
+ * own DatasetWriter, name-0, name-1 ... The boards are numbered, and worker
+ * w gets boards w, w + workers, w + 2 * workers ...
+ *
+ * Both making up and evaluating board j use generators seeded from the
+ * master seed and j only, so the same master seed and number of workers
+ * always give the same shards. Since every shard is a DatasetWriter, a run
+ * that was stopped continues where each of the workers' last completed
+ * shard ends, and the data is the same as if it hadn't been stopped.
+ *
+ * With deduplication on, a worker doesn't evaluate a board that's equivalent
+ * (see BoardSymmetry) to one it already evaluated, it makes up another one
+ * instead. Equivalent boards can still come up in different workers.
+ *
+ * While it runs, the number of evaluated boards, boards per second and the
+ * estimated time left are printed.
+ *
+ * @author Ljubo Raicevic <rljubo90@gmail.com>
+ */
+public class DataGenerationPipeline {
+
+    /**
+     * Boards waiting in a worker's queue.
+     */
+    public static final int QUEUE_CAPACITY = 64;
+
+    /**
+     * Seconds between progress reports.
+     */
+    public static final int REPORT_SECONDS = 10;
+
+    /**
+     * How many times a worker makes up a board before it gives up looking
+     * for one it hasn't evaluated yet.
+     */
+    private static final int MAX_DRAWS = 100;
+
+    /**
+     * Added to the seed for every next generator.
+     */
+    private static final long SEED_STEP = 0x9E3779B97F4A7C15L;
+
+    private final int boardSize;
+    private final int repetitions;
+    private final int workers;
+    private final long masterSeed;
+    private boolean deduplicate;
+
+    /**
+     * Boards evaluated by the current run.
+     */
+    private final AtomicLong evaluated = new AtomicLong();
+
+    /**
+     * Initializes a pipeline with a worker for each of the processors.
+     *
+     * @param boardSize Board size
+     * @param repetitions Monte Carlo repetitions per empty field
+     * @param masterSeed Seed all of the boards and simulations come from
+     */
+    public DataGenerationPipeline(int boardSize, int repetitions, long masterSeed) {
+        this(boardSize, repetitions, masterSeed,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Initializes a pipeline.
+     *
+     * @param boardSize Board size
+     * @param repetitions Monte Carlo repetitions per empty field
+     * @param masterSeed Seed all of the boards and simulations come from
+     * @param workers Number of workers, every one with its own shard
+     */
+    public DataGenerationPipeline(int boardSize, int repetitions,
+            long masterSeed, int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("There has to be a worker.");
+        }
+        this.boardSize = boardSize;
+        this.repetitions = repetitions;
+        this.masterSeed = masterSeed;
+        this.workers = workers;
+    }
+
+    public int getNumberOfWorkers() {
+        return workers;
+    }
+
+    public boolean isDeduplicating() {
+        return deduplicate;
+    }
+
+    /**
+     * Turns skipping the boards equivalent to the ones a worker already
+     * evaluated on or off. Off by default.
+     *
+     * @param deduplicate true to skip equivalent boards
+     */
+    public void setDeduplicate(boolean deduplicate) {
+        this.deduplicate = deduplicate;
+    }
+
+    /**
+     * Name of a worker's DatasetWriter.
+     *
+     * @param fileName Name of the dataset
+     * @param worker Worker, starting from 0
+     * @return Name of the worker's dataset
+     */
+    public static String workerFileName(String fileName, int worker) {
+        return fileName + "-" + worker;
+    }
+
+    /**
+     * Generates the data, continuing a run that was stopped.
+     *
+     * @param noOfBoards How many random boards should be evaluated in total
+     * @param fileName Name of the dataset
+     * @throws IOException if writing a shard fails
+     * @throws InterruptedException if the thread is interrupted, the workers
+     * are stopped then
+     */
+    public void run(long noOfBoards, String fileName)
+            throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(2 * workers);
+        CompletionService<Void> lanes = new ExecutorCompletionService<>(executor);
+        List<DatasetWriter> writers = new ArrayList<>();
+        evaluated.set(0);
+        Throwable failure = null;
+
+        try {
+            long done = 0;
+            for (int w = 0; w < workers; w++) {
+                DatasetWriter writer = new DatasetWriter(workerFileName(fileName, w));
+                writers.add(writer);
+
+                //boards w, w + workers, ... below noOfBoards
+                long boards = noOfBoards > w ? (noOfBoards - w - 1) / workers + 1 : 0;
+                long first = Math.min(writer.getNoOfRecords(), boards);
+                done += first;
+
+                BlockingQueue<Board> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+                lanes.submit(generator(w, first, boards, queue));
+                lanes.submit(evaluator(w, first, boards, queue, writer));
+            }
+
+            report(lanes, noOfBoards, done);
+        } catch (Throwable ex) {
+            failure = ex;
+            throw ex;
+        } finally {
+            //stop the lanes and wait for them, so that nothing writes to a
+            //closed writer, then close all of the writers (a writer that
+            //isn't closed doesn't finish its shard and the manifest)
+            executor.shutdownNow();
+            awaitTermination(executor);
+            IOException closeFailure = null;
+            for (DatasetWriter writer : writers) {
+                try {
+                    writer.close();
+                } catch (IOException ex) {
+                    if (failure != null) {
+                        failure.addSuppressed(ex);
+                    } else if (closeFailure == null) {
+                        closeFailure = ex;
+                    } else {
+                        closeFailure.addSuppressed(ex);
+                    }
+                }
+            }
+            if (closeFailure != null) {
+                throw closeFailure;
+            }
+        }
+    }
+
+    /**
+     * Waits until all of the threads of the executor are done. If the thread
+     * is interrupted while waiting, it still waits, and it's interrupted
+     * again afterwards.
+     *
+     * @param executor Executor that has been shut down
+     */
+    private static void awaitTermination(ExecutorService executor) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(REPORT_SECONDS, TimeUnit.SECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Makes up the worker's boards and puts them into the queue. When
+     * deduplicating, the boards before the first one are made up again too,
+     * so that a resumed run knows which boards the worker already evaluated.
+     */
+    private Callable<Void> generator(int worker, long first, long boards,
+            BlockingQueue<Board> queue) {
+        final boolean dedup = deduplicate;
+        return () -> {
+            Xoshiro256 random = new Xoshiro256(0);
+            Set<Long> evaluatedBoards = new HashSet<>();
+            for (long k = dedup ? 0 : first; k < boards; k++) {
+                random.setSeed(boardSeed(worker, k));
+                Board board = RandomBoardGenerator.makeUpARandomBoard(boardSize, random);
+                
+                //make up another board while it's equivalent to an earlier one
+                for (int draws = 1; dedup && draws < MAX_DRAWS
+                        && !evaluatedBoards.add(BoardSymmetry.canonicalHash(board)); 
+                        draws++) {
+                    board = RandomBoardGenerator.makeUpARandomBoard(boardSize, random);
+                }
+                
+                if (k >= first) {
+                    queue.put(board);
+                }
+            }
+            return null;
+        };
+    }
+
+    /**
+     * Evaluates the boards from the queue and writes them to the worker's
+     * shard.
+     */
+    private Callable<Void> evaluator(int worker, long first, long boards,
+            BlockingQueue<Board> queue, DatasetWriter writer) {
+        return () -> {
+            Xoshiro256 random = new Xoshiro256(0);
+            StringBuilder sb = new StringBuilder();
+            for (long k = first; k < boards; k++) {
+                Board board = queue.take();
+                random.setSeed(boardSeed(worker, k) + SEED_STEP);
+                sb.setLength(0);
+                MonteCarlo.evaluateBoard(board, repetitions, sb, random);
+                writer.write(sb);
+                evaluated.incrementAndGet();
+            }
+            return null;
+        };
+    }
+
+    /**
+     * Seed of the board, which is the k-th board of the worker. The
+     * evaluator uses the next one.
+     */
+    private long boardSeed(int worker, long k) {
+        long board = k * workers + worker;
+        return masterSeed + 2 * board * SEED_STEP;
+    }
+
+    /**
+     * Waits for the lanes to finish, printing the progress. If any of them
+     * fails, the exception is thrown right away (and the rest of the lanes
+     * are stopped by run).
+     *
+     * @param lanes Generators and evaluators
+     * @param noOfBoards Boards in total
+     * @param done Boards that were done before this run
+     */
+    private void report(CompletionService<Void> lanes, long noOfBoards, long done)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+
+        for (int finished = 0; finished < 2 * workers; ) {
+            Future<Void> lane = lanes.poll(REPORT_SECONDS, TimeUnit.SECONDS);
+            if (lane == null) {
+                printProgress(start, noOfBoards, done);
+                continue;
+            }
+            
+            try {
+                lane.get();
+                finished++;
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof IOException) {
+                    throw (IOException) ex.getCause();
+                }
+                throw new IllegalStateException(ex.getCause());
+            }
+        }
+
+        printProgress(start, noOfBoards, done);
+    }
+
+    private void printProgress(long start, long noOfBoards, long done) {
+        long boards = evaluated.get();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double perSecond = seconds > 0 ? boards / seconds : 0;
+        long left = noOfBoards - done - boards;
+        String eta = perSecond > 0
+                ? formatSeconds((long) (left / perSecond)) : "unknown";
+
+        System.out.println(String.format("%d/%d boards, %.1f boards/s, ETA %s",
+                done + boards, noOfBoards, perSecond, eta));
+    }
+
+    private static String formatSeconds(long seconds) {
+        return String.format("%d:%02d:%02d",
+                seconds / 3600, (seconds / 60) % 60, seconds % 60);
+    }
+}
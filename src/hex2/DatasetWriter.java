@@ -0,0 +1,309 @@
+package hex2;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Streams training data to disk instead of collecting all of it on the heap.
+ * Data is written in records, one record being all of the lines of a single
+ * board or a single game, through a buffer and a FileChannel.
+ *
+ * Records are written to shards, name.00000, name.00001 ... A shard is
+ * completed once it grows past the maximum shard size (records are never
+ * split between shards), and then it's forced to disk and a line with its
+ * name, number of records and size is added to name.manifest. The shards
+ * together hold the same text that used to be written to a single file.
+ *
+ * Opening a writer on a name that already has a manifest resumes the run:
+ * the completed shards are kept, a shard that wasn't completed (because the
+ * process died) is overwritten, and getNoOfRecords says how many records are
+ * already saved.
+ *
+ * A DatasetWriter is not thread safe.
+ *
+ * @author Ljubo Raicevic <rljubo90@gmail.com>
+ */
+public class DatasetWriter implements Closeable {
+
+    /**
+     * Default maximum shard size, 64 MB.
+     */
+    public static final long DEFAULT_SHARD_BYTES = 64L << 20;
+
+    /**
+     * Size of the write buffer.
+     */
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final String name;
+    private final long maxShardBytes;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+
+    /**
+     * Shard that is being written, and how many records and bytes it has.
+     */
+    private FileChannel shard;
+    private int shardNo;
+    private long shardRecords;
+    private long shardBytes;
+
+    /**
+     * Records in the completed shards.
+     */
+    private long completedRecords;
+
+    /**
+     * Opens a writer with the default maximum shard size.
+     *
+     * @param name Name of the dataset, used as a prefix of the file names
+     * @throws IOException if the manifest can't be read or a shard created
+     */
+    public DatasetWriter(String name) throws IOException {
+        this(name, DEFAULT_SHARD_BYTES);
+    }
+
+    /**
+     * Opens a writer, resuming the run if the dataset has a manifest.
+     *
+     * @param name Name of the dataset, used as a prefix of the file names
+     * @param maxShardBytes A shard is completed once it's this big
+     * @throws IOException if the manifest can't be read or a shard created
+     */
+    public DatasetWriter(String name, long maxShardBytes) throws IOException {
+        if (maxShardBytes <= 0) {
+            throw new IllegalArgumentException("Shard size must be positive.");
+        }
+        this.name = name;
+        this.maxShardBytes = maxShardBytes;
+
+        for (long[] completed : readManifest()) {
+            shardNo++;
+            completedRecords += completed[0];
+        }
+
+        openShard();
+    }
+
+    /**
+     * Number of records saved so far, including the ones from earlier runs.
+     * Records that are still in a shard that's not completed are counted too,
+     * but a resumed run starts from the completed ones only.
+     *
+     * @return Number of records
+     */
+    public long getNoOfRecords() {
+        return completedRecords + shardRecords;
+    }
+
+    /**
+     * Number of completed shards.
+     *
+     * @return Number of completed shards
+     */
+    public int getNoOfShards() {
+        return shardNo;
+    }
+
+    /**
+     * Name of the file of a shard.
+     *
+     * @param name Name of the dataset
+     * @param shardNo Shard number, starting from 0
+     * @return File name
+     */
+    public static String shardFileName(String name, int shardNo) {
+        return String.format(Locale.ROOT, "%s.%05d", name, shardNo);
+    }
+
+    /**
+     * Name of the manifest file.
+     *
+     * @param name Name of the dataset
+     * @return File name
+     */
+    public static String manifestFileName(String name) {
+        return name + ".manifest";
+    }
+
+    /**
+     * Writes a record. Completes the shard if it grew past the maximum size.
+     *
+     * @param record Lines of a single board or game, can be empty (it still
+     * counts as a record, so that a resumed run starts at the right board)
+     * @throws IOException if writing fails
+     */
+    public void write(CharSequence record) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(record);
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (result.isOverflow()) {
+                flush();
+            } else if (result.isUnderflow()) {
+                break;
+            } else {
+                result.throwException();
+            }
+        }
+        shardRecords++;
+
+        if (shardBytes + buffer.position() >= maxShardBytes) {
+            completeShard();
+            openShard();
+        }
+    }
+
+    /**
+     * Completes the last shard, if it has any records, and closes it.
+     *
+     * @throws IOException if writing fails
+     */
+    @Override
+    public void close() throws IOException {
+        if (shard == null) { return; }
+
+        if (shardRecords > 0) {
+            completeShard();
+        } else {
+            shard.close();
+            new File(shardFileName(name, shardNo)).delete();
+        }
+        shard = null;
+    }
+
+    /**
+     * Writes the buffer to the shard.
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            shardBytes += shard.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Flushes the shard, forces it to disk and adds it to the manifest.
+     */
+    private void completeShard() throws IOException {
+        flush();
+        shard.force(true);
+        shard.close();
+
+        String line = shardFileName(name, shardNo) + " " + shardRecords + " "
+                + shardBytes + System.lineSeparator();
+        try (FileChannel manifest = FileChannel.open(
+                new File(manifestFileName(name)).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            ByteBuffer bytes = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                manifest.write(bytes);
+            }
+            manifest.force(true);
+        }
+
+        completedRecords += shardRecords;
+        shardRecords = 0;
+        shardNo++;
+    }
+
+    /**
+     * Opens the next shard, overwriting it if it's left over from a run that
+     * didn't complete it.
+     */
+    private void openShard() throws IOException {
+        shard = FileChannel.open(new File(shardFileName(name, shardNo)).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        shardRecords = 0;
+        shardBytes = 0;
+    }
+
+    /**
+     * Reads the completed shards from the manifest. A shard counts only if
+     * its file is there and has the size from the manifest, and so do all of
+     * the shards before it. If the manifest has anything else, it's written
+     * again with only the shards that count.
+     *
+     * @return Number of records and size of every completed shard
+     */
+    private List<long[]> readManifest() throws IOException {
+        List<long[]> completed = new ArrayList<>();
+        File manifest = new File(manifestFileName(name));
+        if (!manifest.exists()) { return completed; }
+
+        List<String> lines = new ArrayList<>();
+        boolean valid = true;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(manifest), StandardCharsets.UTF_8))) {
+            String line;
+            while (valid && (line = reader.readLine()) != null) {
+                long[] parsed = parseManifestLine(line, completed.size());
+                if (parsed == null) {
+                    valid = false;
+                } else {
+                    completed.add(parsed);
+                    lines.add(line);
+                }
+            }
+        }
+
+        if (!valid) {
+            File temp = new File(manifestFileName(name) + ".tmp");
+            StringBuilder text = new StringBuilder();
+            for (String line : lines) {
+                text.append(line).append(System.lineSeparator());
+            }
+            Files.write(temp.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp.toPath(), manifest.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        return completed;
+    }
+
+    /**
+     * Parses a line of the manifest, "file records bytes".
+     *
+     * @param line Line of the manifest
+     * @param shardNo Shard the line should be about
+     * @return Number of records and size of the shard, null if the line
+     * isn't about that shard or the shard file doesn't match it
+     */
+    private long[] parseManifestLine(String line, int shardNo) {
+        String[] parts = line.trim().split(" ");
+        if (parts.length < 3) { return null; }
+
+        //the file name may have spaces, the numbers are at the end
+        String file = shardFileName(name, shardNo);
+        if (!line.trim().equals(file + " " + parts[parts.length - 2] + " "
+                + parts[parts.length - 1])) {
+            return null;
+        }
+        try {
+            long records = Long.parseLong(parts[parts.length - 2]);
+            long bytes = Long.parseLong(parts[parts.length - 1]);
+            if (new File(file).length() != bytes) { return null; }
+            return new long[] {records, bytes};
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+}
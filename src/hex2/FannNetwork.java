@@ -0,0 +1,294 @@
+package hex2;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A neural network read from a FANN .net file (FANN_FLO_2.x), run in pure
+ * Java. It gives the same results as fann_run, without going through JNA and
+ * without libfann being installed.
+ *
+ * Like in FANN, every layer ends with a bias neuron, a neuron without
+ * connections whose value is always 1, and the neurons and their connections
+ * are numbered across all of the layers. Both decimal points and decimal
+ * commas (see PlayerNeuralNetwork) are accepted. The stepwise activation
+ * functions are computed exactly instead of being approximated.
+ *
+ * A FannNetwork is not thread safe, since it reuses its buffer of neuron
+ * values.
+ *
+ * @author Ljubo Raicevic <rljubo90@gmail.com>
+ */
+public class FannNetwork {
+
+    /* FANN activation functions */
+    private static final int LINEAR = 0;
+    private static final int THRESHOLD = 1;
+    private static final int THRESHOLD_SYMMETRIC = 2;
+    private static final int SIGMOID = 3;
+    private static final int SIGMOID_STEPWISE = 4;
+    private static final int SIGMOID_SYMMETRIC = 5;
+    private static final int SIGMOID_SYMMETRIC_STEPWISE = 6;
+    private static final int GAUSSIAN = 7;
+    private static final int GAUSSIAN_SYMMETRIC = 8;
+    private static final int GAUSSIAN_STEPWISE = 9;
+    private static final int ELLIOT = 10;
+    private static final int ELLIOT_SYMMETRIC = 11;
+    private static final int LINEAR_PIECE = 12;
+    private static final int LINEAR_PIECE_SYMMETRIC = 13;
+    private static final int SIN_SYMMETRIC = 14;
+    private static final int COS_SYMMETRIC = 15;
+    private static final int SIN = 16;
+    private static final int COS = 17;
+
+    /**
+     * Matches one "(...)" group of the neurons and connections lines.
+     */
+    private static final Pattern GROUP = Pattern.compile("\\(([^)]*)\\)");
+
+    private final int noOfInputs;
+    private final int noOfOutputs;
+
+    /**
+     * Index of the first neuron of the last layer.
+     */
+    private final int firstOutput;
+
+    /**
+     * For neuron n: its connections are firstConnection[n] to
+     * firstConnection[n + 1] - 1, and it uses activation function
+     * activation[n] with steepness steepness[n].
+     */
+    private final int[] firstConnection;
+    private final int[] activation;
+    private final float[] steepness;
+
+    /**
+     * For connection c: the neuron it comes from and its weight.
+     */
+    private final int[] source;
+    private final float[] weight;
+
+    /**
+     * Values of the neurons during a run.
+     */
+    private final float[] values;
+
+    /**
+     * Reads the network from a FANN .net file.
+     *
+     * @param fileName FANN network file
+     * @throws IOException if the file can't be read
+     * @throws IllegalArgumentException if the file isn't a FANN float network
+     */
+    public FannNetwork(String fileName) throws IOException {
+        Map<String, String> properties = new HashMap<>();
+        List<String> neurons = new ArrayList<>();
+        List<String> connections = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+            String header = reader.readLine();
+            if (header == null || !header.startsWith("FANN_FLO_2")) {
+                throw new IllegalArgumentException(
+                        fileName + " is not a FANN_FLO_2.x network.");
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int equals = line.indexOf('=');
+                if (equals < 0) { continue; }
+                String key = line.substring(0, equals).trim();
+                String value = line.substring(equals + 1).trim();
+
+                if (key.startsWith("neurons")) {
+                    groups(value, neurons);
+                } else if (key.startsWith("connections")) {
+                    groups(value, connections);
+                } else {
+                    properties.put(key, value);
+                }
+            }
+        }
+
+        String layerSizes = properties.get("layer_sizes");
+        if (layerSizes == null) {
+            throw new IllegalArgumentException(fileName + " has no layer_sizes.");
+        }
+        String[] sizes = layerSizes.trim().split("\\s+");
+        int noOfNeurons = 0;
+        for (String size : sizes) {
+            noOfNeurons += Integer.parseInt(size);
+        }
+        if (noOfNeurons != neurons.size()) {
+            throw new IllegalArgumentException(fileName
+                    + " has " + neurons.size() + " neurons instead of "
+                    + noOfNeurons + ".");
+        }
+
+        //every layer has a bias neuron at the end
+        this.noOfInputs = Integer.parseInt(sizes[0]) - 1;
+        this.noOfOutputs = Integer.parseInt(sizes[sizes.length - 1]) - 1;
+        this.firstOutput = noOfNeurons - noOfOutputs - 1;
+
+        this.firstConnection = new int[noOfNeurons + 1];
+        this.activation = new int[noOfNeurons];
+        this.steepness = new float[noOfNeurons];
+        for (int n = 0; n < noOfNeurons; n++) {
+            String[] neuron = neurons.get(n).split(", ");
+            firstConnection[n + 1] = firstConnection[n] + Integer.parseInt(neuron[0].trim());
+            activation[n] = Integer.parseInt(neuron[1].trim());
+            steepness[n] = parseFloat(neuron[2]);
+        }
+
+        if (firstConnection[noOfNeurons] != connections.size()) {
+            throw new IllegalArgumentException(fileName
+                    + " has " + connections.size() + " connections instead of "
+                    + firstConnection[noOfNeurons] + ".");
+        }
+        this.source = new int[connections.size()];
+        this.weight = new float[connections.size()];
+        for (int c = 0; c < connections.size(); c++) {
+            String[] connection = connections.get(c).split(", ");
+            source[c] = Integer.parseInt(connection[0].trim());
+            weight[c] = parseFloat(connection[1]);
+        }
+
+        this.values = new float[noOfNeurons];
+    }
+
+    public int getNoOfInputs() {
+        return noOfInputs;
+    }
+
+    public int getNoOfOutputs() {
+        return noOfOutputs;
+    }
+
+    /**
+     * Runs the network on a single input.
+     *
+     * @param input Input, getNoOfInputs() values
+     * @param output Array the getNoOfOutputs() output values are written to
+     */
+    public void run(float[] input, float[] output) {
+        run(input, 1, output);
+    }
+
+    /**
+     * Runs the network on a batch of inputs stored one after another in a
+     * single array, and writes the outputs one after another to another one.
+     *
+     * @param inputs count * getNoOfInputs() values
+     * @param count Number of inputs in the batch
+     * @param outputs Array the count * getNoOfOutputs() output values are
+     * written to
+     */
+    public void run(float[] inputs, int count, float[] outputs) {
+        int noOfNeurons = values.length;
+
+        for (int k = 0; k < count; k++) {
+            System.arraycopy(inputs, k * noOfInputs, values, 0, noOfInputs);
+
+            for (int n = noOfInputs; n < noOfNeurons; n++) {
+                int first = firstConnection[n];
+                int last = firstConnection[n + 1];
+
+                //bias neurons don't have connections
+                if (first == last) {
+                    values[n] = 1;
+                    continue;
+                }
+
+                float sum = 0;
+                for (int c = first; c < last; c++) {
+                    sum += weight[c] * values[source[c]];
+                }
+                values[n] = activate(activation[n], steepness[n], sum);
+            }
+
+            System.arraycopy(values, firstOutput, outputs, k * noOfOutputs,
+                    noOfOutputs);
+        }
+    }
+
+    /**
+     * Applies the activation function the way fann_run does.
+     *
+     * @param function FANN activation function
+     * @param steepness Activation steepness
+     * @param sum Weighted sum of the inputs of the neuron
+     * @return Value of the neuron
+     */
+    private static float activate(int function, float steepness, float sum) {
+        sum *= steepness;
+        float maxSum = 150 / steepness;
+        if (sum > maxSum) {
+            sum = maxSum;
+        } else if (sum < -maxSum) {
+            sum = -maxSum;
+        }
+
+        switch (function) {
+            case LINEAR:
+                return sum;
+            case LINEAR_PIECE:
+                return sum < 0 ? 0 : (sum > 1 ? 1 : sum);
+            case LINEAR_PIECE_SYMMETRIC:
+                return sum < -1 ? -1 : (sum > 1 ? 1 : sum);
+            case SIGMOID:
+            case SIGMOID_STEPWISE:
+                return (float) (1 / (1 + Math.exp(-2 * sum)));
+            case SIGMOID_SYMMETRIC:
+            case SIGMOID_SYMMETRIC_STEPWISE:
+                return (float) (2 / (1 + Math.exp(-2 * sum)) - 1);
+            case THRESHOLD:
+                return sum < 0 ? 0 : 1;
+            case THRESHOLD_SYMMETRIC:
+                return sum < 0 ? -1 : 1;
+            case GAUSSIAN:
+            case GAUSSIAN_STEPWISE:
+                return (float) Math.exp(-sum * sum);
+            case GAUSSIAN_SYMMETRIC:
+                return (float) (Math.exp(-sum * sum) * 2 - 1);
+            case ELLIOT:
+                return sum / 2 / (1 + Math.abs(sum)) + 0.5f;
+            case ELLIOT_SYMMETRIC:
+                return sum / (1 + Math.abs(sum));
+            case SIN_SYMMETRIC:
+                return (float) Math.sin(sum);
+            case COS_SYMMETRIC:
+                return (float) Math.cos(sum);
+            case SIN:
+                return (float) (Math.sin(sum) / 2 + 0.5);
+            case COS:
+                return (float) (Math.cos(sum) / 2 + 0.5);
+            default:
+                throw new IllegalArgumentException(
+                        "Unknown activation function " + function + ".");
+        }
+    }
+
+    /**
+     * Adds the contents of all "(...)" groups in the text to the list.
+     */
+    private static void groups(String text, List<String> result) {
+        Matcher m = GROUP.matcher(text);
+        while (m.find()) {
+            result.add(m.group(1));
+        }
+    }
+
+    /**
+     * Parses a float written with a decimal point or a decimal comma.
+     */
+    private static float parseFloat(String s) {
+        return Float.parseFloat(s.trim().replace(',', '.'));
+    }
+}
@@ -2,10 +2,22 @@ package hex2;
 
 /**
  * The <tt>Game</tt> class represents a single game of Hex.
+ * 
+ * A game can have a clock: a time limit per move, per game (for all of a
+ * player's moves together), or both. Every move is given a deadline within
+ * both limits, and a player who goes over one of the limits by more than
+ * TIME_TOLERANCE_MILLIS loses on time. The time used is recorded for every
+ * move, with or without a clock.
  *
  * @author Ljubo Raicevic <rljubo90@gmail.com>
  */
 public class Game {
+    
+    /**
+     * How much a player can go over the deadline without losing on time, for
+     * returning from the search once it stops.
+     */
+    public static final long TIME_TOLERANCE_MILLIS = 20;
 
     /**
      * Board on which the game is played.
@@ -25,10 +37,45 @@ public class Game {
     /**
      * Union-find data structure that helps determine who (if anyone) won. Last
      * four entries represent added fields: ufSize - 4 & ufSize - 3 => player 1
-     * ufSize - 2 & ufSize - 1 => player 2
+     * ufSize - 2 & ufSize - 1 => player 2, which are the edge nodes of the
+     * BoardGeometry.
      */
-    protected final UF unionFind;
+    protected final UndoUF unionFind;
     protected final int ufSize;
+    
+    /**
+     * Neighbors of the fields of the board.
+     */
+    protected final BoardGeometry geometry;
+    
+    /**
+     * Moves played so far and the union-find checkpoints from before each of
+     * them, used for taking moves back.
+     */
+    protected final int[] history;
+    protected final int[] checkpoints;
+    
+    /**
+     * Time limits in nanoseconds, 0 for no limit.
+     */
+    protected final long timePerMove;
+    protected final long timePerGame;
+    
+    /**
+     * Nanoseconds each of the moves took, and each of the players in total.
+     */
+    protected final long[] moveTimes;
+    protected final long[] timeUsed;
+    
+    /**
+     * Player who lost on time, 0 if nobody did.
+     */
+    protected byte lostOnTime;
+    
+    /**
+     * Is the final board printed when the game ends.
+     */
+    protected boolean verbose = true;
 
     /**
      * Initializes a new game.
@@ -38,13 +85,39 @@ public class Game {
      * @param second Second player (horizontal)
      */
     public Game(Board b, Player first, Player second) {
+        this(b, first, second, 0, 0);
+    }
+    
+    /**
+     * Initializes a new game with a clock.
+     *
+     * @param b Board to be played on
+     * @param first First player (vertical)
+     * @param second Second player (horizontal)
+     * @param timePerMoveMillis Time limit for a move in milliseconds, 0 for
+     * no limit
+     * @param timePerGameMillis Time limit for all of a player's moves in
+     * milliseconds, 0 for no limit
+     */
+    public Game(Board b, Player first, Player second, 
+            long timePerMoveMillis, long timePerGameMillis) {
+        if (timePerMoveMillis < 0 || timePerGameMillis < 0) {
+            throw new IllegalArgumentException("Time limits can't be negative.");
+        }
+        this.timePerMove = timePerMoveMillis * 1000000L;
+        this.timePerGame = timePerGameMillis * 1000000L;
+        this.moveTimes = new long[b.getSize() * b.getSize()];
+        this.timeUsed = new long[2];
         this.movesPlayed = 0;
         this.players = new Player[2];
         this.players[0] = first;
         this.players[1] = second;
         this.board = b;
+        this.geometry = b.getGeometry();
         this.ufSize = b.getSize() * b.getSize() + 4;
-        this.unionFind = new UF(ufSize);
+        this.unionFind = new UndoUF(ufSize);
+        this.history = new int[b.getSize() * b.getSize()];
+        this.checkpoints = new int[b.getSize() * b.getSize()];
     }
 
     /**
@@ -64,7 +137,8 @@ public class Game {
     }
 
     /**
-     * Starts the game. Players take turns until one of them wins.
+     * Starts the game. Players take turns until one of them wins or one of
+     * them runs out of time.
      * 
      * @return Winning player
      */
@@ -74,126 +148,182 @@ public class Game {
         //while game isn't over
         while (winningPlayer == 0) {
             //players take turns based on number of moves played so far
-            Coordinate move = players[movesPlayed % 2].makeMove(board);
-
-            //players[0]'s mark is 1 and player[1]'s mark is 2
-            board.putMark(move, (byte) (movesPlayed % 2 + 1));
-            //connect the field to its neighbors of the same color
-            Coordinate[] sameColorNeighbors = findFieldsNeighborsOfSameColor(move);
-
-            for (Coordinate neighbor : sameColorNeighbors) {
-                unionFind.union(getFieldIndex(move), getFieldIndex(neighbor));
-            }
-
-            //check if added nodes need to get connected
-            if (isFieldOnPlayersEdge(move)) {
-                unionFind.union(getFieldIndex(move), getIndexOfAddedNodeInUF(move));
+            int player = movesPlayed % 2;
+            long start = System.nanoTime();
+            int move = players[player].makeFieldMove(board, deadline(player, start));
+            long time = System.nanoTime() - start;
+            
+            timeUsed[player] += time;
+            moveTimes[movesPlayed] = time;
+            if (isOverTime(player, time)) {
+                lostOnTime = (byte) (player + 1);
+                winningPlayer = (byte) (2 - player);
+                break;
             }
-
-            movesPlayed++;
-
-            winningPlayer = whoWon();
+            winningPlayer = makeMove(move);
         }
 
-        System.out.println(board);
-        System.out.println("Player " + winningPlayer + " wins!");
+        if (verbose) {
+            System.out.println(board);
+            System.out.println("Player " + winningPlayer + " wins"
+                    + (lostOnTime != 0 ? " on time!" : "!"));
+        }
         return winningPlayer;
     }
-
+    
     /**
-     * Checks if the field is on one of the edges of the board.
-     *
-     * @param c Coordinates of the field
-     * @return true if field is on the edge, false otherwise
+     * Deadline of the player's move, the sooner of the time per move and the
+     * player's share of the time left for the game. The time left is shared
+     * between all of the moves the player might still have to make, so a
+     * player that keeps to its deadlines never runs out of it.
+     * 
+     * @param player Player on the move, 0 or 1
+     * @param start System.nanoTime() at the beginning of the move
+     * @return System.nanoTime() deadline, 0 if there is no clock
      */
-    protected boolean isFieldOnPlayersEdge(Coordinate c) {
-        int size = board.getSize() - 1;
-        int player = movesPlayed % 2;
-
-        //for the first player check vertical edges
-        if (player == 0) {
-            return c.row == 0 || c.row == size;
-        } //for the second player check horizontal edges
-        else {
-            return c.col == 0 || c.col == size;
+    protected long deadline(int player, long start) {
+        long time = timePerMove;
+        if (timePerGame > 0) {
+            int movesLeft = (board.getNoOfEmptyFields() + 1) / 2;
+            long share = Math.max((timePerGame - timeUsed[player]) / movesLeft, 1);
+            time = time > 0 ? Math.min(time, share) : share;
         }
+        return time > 0 ? start + time : 0;
     }
-
+    
     /**
-     * Calculates index of the field in the union find.
-     *
-     * @param c Coordinates of the field
-     * @return Index of the field in the union find
+     * Did the player go over one of the time limits, by more than
+     * TIME_TOLERANCE_MILLIS.
+     * 
+     * @param player Player who moved, 0 or 1
+     * @param time Nanoseconds the move took
+     * @return true if the player loses on time
      */
-    protected int getFieldIndex(Coordinate c) {
-        return c.row * board.getSize() + c.col;
+    protected boolean isOverTime(int player, long time) {
+        long tolerance = TIME_TOLERANCE_MILLIS * 1000000L;
+        return (timePerMove > 0 && time > timePerMove + tolerance)
+                || (timePerGame > 0 && timeUsed[player] > timePerGame + tolerance);
     }
 
     /**
-     * Determines added node's index in union find based on the field.
-     *
-     * @param c Coordinates of the field on the edge whose added edge needs to
-     * be found
-     * @return Index of the added edge in union find
+     * Plays the move for the player on the move and connects it in the
+     * union-find.
+     * 
+     * @param move Coordinates of an empty field
+     * @return 0 if game is still active, 1 or 2 if first or second player won,
+     * respectively
+     * @throws IllegalArgumentException if the field is already marked
      */
-    protected int getIndexOfAddedNodeInUF(Coordinate c) {
-        int player = movesPlayed % 2;
-
-        //added node for the up side
-        if      (c.row == 0                   && player == 0) { return ufSize - 4; }
-        //added node for the down side
-        else if (c.row == board.getSize() - 1 && player == 0) { return ufSize - 3; }
-        //added node for the left side
-        else if (c.col == 0                   && player == 1) { return ufSize - 2; }
-        //added node for the right side
-        else if (c.col == board.getSize() - 1 && player == 1) { return ufSize - 1; }
-
-        return 0;
+    public byte makeMove(Coordinate move) {
+        return makeMove(getFieldIndex(move));
     }
-
+    
     /**
-     * Finds neighbors of the field.
-     *
-     * @param c Coordinates of the field
-     * @return Array of coordinates of the neighbors of the field
+     * Plays the move for the player on the move and connects it in the
+     * union-find.
+     * 
+     * @param field Index of an empty field, row * size + col
+     * @return 0 if game is still active, 1 or 2 if first or second player won,
+     * respectively
+     * @throws IllegalArgumentException if the field is already marked
      */
-    protected Coordinate[] findFieldsNeighborsOfSameColor(Coordinate c) {
-        byte color = board.getFieldMark(c); //board.matrix[c.row][c.col];
-
-        //list of all possible neighbors, even the illegal ones
-        Coordinate[] neighbors = new Coordinate[6];
-        neighbors[0] = new Coordinate(c.row - 1, c.col    );
-        neighbors[1] = new Coordinate(c.row - 1, c.col + 1);
-        neighbors[2] = new Coordinate(c.row,     c.col - 1);
-        neighbors[3] = new Coordinate(c.row,     c.col + 1);
-        neighbors[4] = new Coordinate(c.row + 1, c.col - 1);
-        neighbors[5] = new Coordinate(c.row + 1, c.col    );
-
-        //remove illegal neighbors & neighbors of different color (very racist)
-        int nullCount = 0;
-        for (int iCount = 0; iCount < 6; iCount++) {
-            Coordinate n = neighbors[iCount];
-            if (n.row < 0 || n.row >= board.getSize()
-                    || n.col < 0 || n.col >= board.getSize()
-                    || board.getFieldMark(n) != color) { //board.matrix[n.row][n.col] != color) {
-                neighbors[iCount] = null;
-                nullCount++;
+    public byte makeMove(int field) {
+        //players[0]'s mark is 1 and player[1]'s mark is 2
+        byte mark = (byte) (movesPlayed % 2 + 1);
+        if (!board.putMark(field, mark)) {
+            throw new IllegalArgumentException(
+                    "Field " + field + " is already marked.");
+        }
+        checkpoints[movesPlayed] = unionFind.checkpoint();
+        history[movesPlayed] = field;
+        
+        //connect the field to its neighbors of the same color, the neighbors
+        //off the board are the edges, which are the added nodes
+        for (int d = 0; d < 6; d++) {
+            int neighbor = geometry.getNeighbor(field, d);
+            byte neighborMark = geometry.isEdgeNode(neighbor)
+                    ? BoardGeometry.getEdgeOwner(neighbor - geometry.getNoOfFields())
+                    : board.getFieldMark(neighbor);
+            if (neighborMark == mark) {
+                unionFind.union(field, neighbor);
             }
         }
 
-        //create a new array without null values and return that array
-        Coordinate[] result = new Coordinate[6 - nullCount];
-        int resultCount = 0;
+        movesPlayed++;
 
-        for (int iCount = 0; iCount < 6; iCount++) {
-            Coordinate n = neighbors[iCount];
-            if (n == null) {
-                continue;
-            }
-            result[resultCount] = n;
-            resultCount++;
+        return whoWon();
+    }
+    
+    /**
+     * Takes back the last move played, without copying the board or the
+     * union-find.
+     * 
+     * @throws IllegalStateException if no moves have been played
+     */
+    public void unmakeMove() {
+        if (movesPlayed == 0) {
+            throw new IllegalStateException("No moves to take back.");
+        }
+        
+        movesPlayed--;
+        board.removeMark(history[movesPlayed]);
+        unionFind.rollback(checkpoints[movesPlayed]);
+    }
+    
+    /**
+     * Turns printing the final board and the winner at the end of play() on
+     * or off. On by default.
+     * 
+     * @param verbose true to print
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+    
+    public int getMovesPlayed() {
+        return movesPlayed;
+    }
+    
+    /**
+     * Time the player took for all of the moves in play().
+     * 
+     * @param player 1 or 2
+     * @return Milliseconds
+     */
+    public long getTimeUsed(int player) {
+        return timeUsed[player - 1] / 1000000L;
+    }
+    
+    /**
+     * Time each of the moves played in play() took, in the order they were
+     * played. A move the player lost on time with is not included.
+     * 
+     * @return Milliseconds per move
+     */
+    public double[] getMoveTimes() {
+        double[] result = new double[movesPlayed];
+        for (int iCount = 0; iCount < movesPlayed; iCount++) {
+            result[iCount] = moveTimes[iCount] / 1e6;
         }
-
         return result;
     }
+    
+    /**
+     * Which player lost on time.
+     * 
+     * @return 1 or 2, 0 if nobody did
+     */
+    public byte getLostOnTime() {
+        return lostOnTime;
+    }
+
+    /**
+     * Calculates index of the field in the union find.
+     *
+     * @param c Coordinates of the field
+     * @return Index of the field in the union find
+     */
+    protected int getFieldIndex(Coordinate c) {
+        return board.coordinateToInt(c);
+    }
 }
\ No newline at end of file
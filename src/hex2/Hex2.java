@@ -1,9 +1,8 @@
 package hex2;
 
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -14,14 +13,27 @@ import java.util.logging.Logger;
 public class Hex2 {
 
     /* CONSTANTS */
-    private static final int boardSize = 7;
     private static final int MCRepetitions = 1000;
     private static final String NNFileName = "fannnetworks/series2/cuniform-2layers.net";
     
     /**
-     * @param args the command line arguments
+     * Board size, 7 unless it's given as the first command line argument.
+     */
+    private static int boardSize = 7;
+    
+    /**
+     * @param args the command line arguments: board size (optional)
      */
     public static void main(String[] args) {
+        if (args.length > 0) {
+            boardSize = Integer.parseInt(args[0]);
+            if (boardSize < 1 || boardSize > Board.MAX_SIZE) {
+                System.err.println("Board size has to be between 1 and " 
+                        + Board.MAX_SIZE + ".");
+                return;
+            }
+        }
+        
         /* INITIALIZE THE PLAYERS */
         //StringBuilder sb = new StringBuilder();
         PlayerHuman h = new PlayerHuman();
@@ -30,8 +42,10 @@ public class Hex2 {
         //PlayerNeuralNetwork nn = new PlayerNeuralNetwork(NNFileName);
         
         singleGame(mc, mc2);
-        //multipleGames(mc2, mc, 3);
+        //multipleGames(() -> new PlayerMonteCarlo(MCRepetitions), 
+        //        () -> new PlayerMCTS(MCRepetitions * 40), 100);
         //randomDataGeneration(1, "test");
+        //parallelDataGeneration(10000, "datasets/series2/random", 1L);
         //monteCarloDataGeneration(10000, 3, 30, "datasets/series2/cuniform");
         
 //        try (FileWriter fw = new FileWriter(new File("test"))) {
@@ -54,27 +68,30 @@ public class Hex2 {
     }
     
     /**
-     * Plays multiple games and reports the winners.
+     * Plays multiple games between two players at once (see Tournament), the
+     * players taking turns playing first, and reports the results.
      * 
-     * @param p1 First player
-     * @param p2 Second player
+     * @param p1 Makes the first player for every game
+     * @param p2 Makes the second player for every game
      * @param repetitions How many games
      */
-    public static void multipleGames(Player p1, Player p2, int repetitions) {
-        int[] wins = new int[3];
+    public static void multipleGames(Supplier<Player> p1, Supplier<Player> p2, 
+            int repetitions) {
+        Tournament tournament = new Tournament(boardSize);
+        tournament.addPlayer("p1", p1);
+        tournament.addPlayer("p2", p2);
         
-        for (int iCount = 0; iCount < repetitions; iCount++) {
-            Board b = new Board(boardSize);
-            Game g = new Game(b, p1, p2);
-            byte winner = g.play();
-            wins[winner]++;
+        try {
+            System.out.println(tournament.play(repetitions));
+        } catch (InterruptedException ex) {
+            Logger.getLogger(Hex2.class.getName()).log(Level.SEVERE, null, ex);
         }
-        
-        System.out.println(Arrays.toString(wins));
     }
     
     /**
      * Generates data from Monte Carlo simulations by evaluating random boards.
+     * The data is streamed to shards of the file (see DatasetWriter), and a
+     * run that was stopped continues from its last completed shard.
      * 
      * @param repetitions How many random boards should be evaluated
      * @param fileName Filename where data will be saved 
@@ -83,21 +100,49 @@ public class Hex2 {
         
         StringBuilder sb = new StringBuilder();
         
-        for (int iCount = 0; iCount < repetitions; iCount++) {
-            Board board = RandomBoardGenerator.makeUpARandomBoard(boardSize);
-            MonteCarlo.evaluateBoard(board, MCRepetitions, sb);
-            if (iCount % 1000 == 0) { System.out.println(iCount); }
+        try (DatasetWriter writer = new DatasetWriter(fileName)) {
+            for (long iCount = writer.getNoOfRecords(); iCount < repetitions; iCount++) {
+                Board board = RandomBoardGenerator.makeUpARandomBoard(boardSize);
+                sb.setLength(0);
+                MonteCarlo.evaluateBoard(board, MCRepetitions, sb);
+                writer.write(sb);
+                if (iCount % 1000 == 0) { System.out.println(iCount); }
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(Hex2.class.getName()).log(Level.SEVERE, null, ex);
         }
+    }
+    
+    /**
+     * Same as randomDataGeneration, with the boards generated and evaluated
+     * on all of the processors (see DataGenerationPipeline). Every processor
+     * writes its own shards of the file, and the data only depends on the
+     * seed and the number of processors. Boards equivalent to ones that were
+     * already evaluated are skipped.
+     * 
+     * @param repetitions How many random boards should be evaluated
+     * @param fileName Filename where data will be saved 
+     * @param seed Seed of the boards and simulations
+     */
+    public static void parallelDataGeneration(
+            int repetitions, String fileName, long seed) {
         
-        try (FileWriter fw = new FileWriter(new File(fileName))) {
-            fw.write(sb.toString());
-        } catch (IOException ex) {
+        DataGenerationPipeline pipeline = 
+                new DataGenerationPipeline(boardSize, MCRepetitions, seed);
+        pipeline.setDeduplicate(true);
+        
+        try {
+            pipeline.run(repetitions, fileName);
+        } catch (IOException | InterruptedException ex) {
             Logger.getLogger(Hex2.class.getName()).log(Level.SEVERE, null, ex);
         }
     }
     
     /**
-     * Plays games between two MonteCarlo players and records them.
+     * Plays games between two MonteCarlo players and records them. Every game
+     * is streamed to shards of the file (see DatasetWriter) as soon as it
+     * ends, and a run that was stopped continues from its last completed
+     * shard.
      * 
      * @param p1MCRepetitions Number of MonteCarlo repetitions for player 1
      * @param p2MCRepetitions Number of MonteCarlo repetitions for player 2
@@ -116,14 +161,20 @@ public class Hex2 {
         //player two's moves don't get recorded
         PlayerMonteCarlo p2 = new PlayerMonteCarlo(p2MCRepetitions);
         
-        //play the games
-        multipleGames(p1, p2, noOfGames);
+        int[] wins = new int[3];
         
-        //save data to file
-        try (FileWriter fw = new FileWriter(new File(fileName))) {
-            fw.write(sb.toString());
+        //play the games, saving each one when it ends
+        try (DatasetWriter writer = new DatasetWriter(fileName)) {
+            for (long iCount = writer.getNoOfRecords(); iCount < noOfGames; iCount++) {
+                sb.setLength(0);
+                Game g = new Game(new Board(boardSize), p1, p2);
+                wins[g.play()]++;
+                writer.write(sb);
+            }
         } catch (IOException ex) {
             Logger.getLogger(Hex2.class.getName()).log(Level.SEVERE, null, ex);
         }
+        
+        System.out.println(Arrays.toString(wins));
     }
 }
\ No newline at end of file
@@ -1,29 +1,56 @@
 package hex2;
 
 /**
+ * A move ranked by MonteCarlo.evaluateBoard. The field is kept as its index,
+ * row * size + col, and Coordinates are only made when they're asked for.
+ * MonteCarlo itself ranks the moves with a MoveRanking, and makes these only
+ * for the callers that want an array of moves.
  *
  * @author Ljubo Raicevic <rljubo90@gmail.com>
  */
 public class MCSimulationMove implements Comparable<MCSimulationMove> {
-    private final Coordinate coordinate;
-    private final Double probability;
+    private final int field;
+    private final int size;
+    private final double probability;
 
-    public MCSimulationMove(Coordinate coordinate, Double simulationsWon) {
-        this.coordinate = coordinate;
+    /**
+     * Initializes a new MCSimulationMove.
+     *
+     * @param field Index of the field, row * size + col
+     * @param size Board size
+     * @param simulationsWon Number of simulations won with the move
+     */
+    public MCSimulationMove(int field, int size, double simulationsWon) {
+        this.field = field;
+        this.size = size;
         this.probability = simulationsWon;
     }
 
+    /**
+     * Index of the field of the move.
+     *
+     * @return row * size + col
+     */
+    public int getField() {
+        return field;
+    }
+
+    /**
+     * Coordinates of the field of the move, a new Coordinate on every call.
+     *
+     * @return Coordinates of the field
+     */
     public Coordinate getCoordinates() {
-        return coordinate;
+        return new Coordinate(field / size, field % size);
     }
 
-    public Double getProbability() {
+    public double getProbability() {
         return probability;
     }
 
     @Override
     public String toString() {
-        return "[" + coordinate + "] " + probability;
+        return "[" + field / size + ", " + field % size + "] " + probability;
     }
 
     @Override
@@ -31,12 +58,6 @@ public class MCSimulationMove implements Comparable<MCSimulationMove> {
      * used in sorting array of unplayed moves
      */
     public int compareTo(MCSimulationMove other) {
-        double result = this.probability - other.probability;
-        if(this.probability - other.probability < 0){
-            return -1;
-        } else if (result > 0){
-            return 1;
-        }
-        return 0;
-    }      
+        return Double.compare(this.probability, other.probability);
+    }
 }
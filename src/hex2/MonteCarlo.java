@@ -1,7 +1,13 @@
 package hex2;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * MonteCarlo class contains static methods that are used by PlayerMonteCarlo
@@ -11,6 +17,18 @@ import java.util.Comparator;
  */
 public class MonteCarlo {
         
+    /**
+     * How many repetitions make up a single unit of work when the evaluation
+     * is spread across several threads.
+     */
+    private static final int REPETITIONS_PER_WORK_UNIT = 100;
+    
+    /**
+     * How many standard errors the best field has to be ahead of the second
+     * one for evaluateBoardAdaptive to stop early.
+     */
+    private static final double CONFIDENCE_Z = 3.0;
+        
     /**
      * Returns array of MCSimulationMove that contains all possible moves and 
      * their probabilities. First element in array is best move, chosen by 
@@ -26,145 +44,550 @@ public class MonteCarlo {
             int repetitions,
             StringBuilder sb) {
         
-        Board boardCopy = b.deepCopy();
+        return rankBoard(b, repetitions, sb, new Options()).toMoves();
+    }
+    
+    /**
+     * Same as evaluateBoard(b, repetitions, sb), with playouts using the given
+     * source of random numbers. Evaluating the same board with sources created
+     * from the same seed gives the same result.
+     * 
+     * @param b Board to be evaluated
+     * @param repetitions Repetitions per empty field
+     * @param sb StringBuilder used for collecting data, can be null
+     * @param random Source of random numbers
+     * @return Moves sorted so that the first one is the best
+     */
+    public static MCSimulationMove[] evaluateBoard(
+            Board b, 
+            int repetitions,
+            StringBuilder sb,
+            RandomSource random) {
+        
+        Options options = new Options();
+        options.setRandom(random);
+        return rankBoard(b, repetitions, sb, options).toMoves();
+    }
+    
+    /**
+     * Same as evaluateBoard(b, repetitions, sb), with the simulations spread
+     * across workers submitted to the pool (see Options.setPool).
+     * 
+     * @param b Board to be evaluated
+     * @param repetitions Repetitions per empty field
+     * @param sb StringBuilder used for collecting data, can be null
+     * @param pool Pool which runs the workers
+     * @param workers How many workers should be submitted to the pool
+     * @return Moves sorted so that the first one is the best
+     */
+    public static MCSimulationMove[] evaluateBoard(
+            Board b, 
+            int repetitions,
+            StringBuilder sb,
+            ExecutorService pool,
+            int workers) {
+        
+        Options options = new Options();
+        options.setPool(pool, workers);
+        return rankBoard(b, repetitions, sb, options).toMoves();
+    }
+    
+    /**
+     * Same as evaluateBoard(b, repetitions, sb, random), with the adaptive
+     * evaluation (see Options.setAdaptive).
+     * 
+     * @param b Board to be evaluated
+     * @param repetitions Average repetitions per empty field
+     * @param sb StringBuilder used for collecting data, can be null
+     * @param random Source of random numbers
+     * @return Moves ranked so that the first one is the best
+     */
+    public static MCSimulationMove[] evaluateBoardAdaptive(
+            Board b, 
+            int repetitions,
+            StringBuilder sb,
+            RandomSource random) {
+        
+        Options options = new Options();
+        options.setRandom(random);
+        options.setAdaptive(true);
+        return rankBoard(b, repetitions, sb, options).toMoves();
+    }
+    
+    /**
+     * Evaluates the board with the given options. The moves are returned as
+     * a MoveRanking, which only ranks as many of the best moves as are asked
+     * for (unless they're recorded in the StringBuilder) and doesn't make an
+     * object per move. evaluateBoard and evaluateBoardAdaptive are shortcuts
+     * for this one, with the moves made into an array.
+     * 
+     * @param b Board to be evaluated
+     * @param repetitions Repetitions per empty field (average repetitions
+     * for the adaptive evaluation)
+     * @param sb StringBuilder used for collecting data, can be null
+     * @param options How the board is evaluated
+     * @return Ranked moves
+     */
+    public static MoveRanking rankBoard(
+            Board b, 
+            int repetitions,
+            StringBuilder sb,
+            Options options) {
+        
+        RandomSource random = options.getRandom() != null 
+                ? options.getRandom() : Xoshiro256.current();
+        if (options.isAdaptive()) {
+            if (options.getDeadline() != 0) {
+                throw new IllegalArgumentException(
+                        "The adaptive evaluation can't have a deadline.");
+            }
+            return rankBoardAdaptive(b, repetitions, sb, random, 
+                    options.isBridgePolicy());
+        }
+        if (options.getPool() != null) {
+            return rankBoard(b, repetitions, sb, options.getPool(), 
+                    options.getWorkers(), random, options.getDeadline(), 
+                    options.isBridgePolicy());
+        }
+        return rankBoard(b, repetitions, sb, random, options.getDeadline(), 
+                options.isBridgePolicy());
+    }
+    
+    /**
+     * Sequential evaluation. Without a deadline, every empty field gets all
+     * of the repetitions. With one, the empty fields take turns getting
+     * REPETITIONS_PER_WORK_UNIT repetitions, until all of them have had all
+     * of their repetitions or the deadline passes. The moves are then ranked
+     * by their win rates, and the probability of a move is its win rate
+     * times repetitions.
+     * 
+     * @param b Board to be evaluated
+     * @param repetitions Repetitions per empty field
+     * @param sb StringBuilder used for collecting data, can be null
+     * @param random Source of random numbers
+     * @param deadline System.nanoTime() at which the evaluation stops, 0 for
+     * no deadline
+     * @param bridgePolicy Should playouts save bridges
+     * @return Ranked moves
+     */
+    private static MoveRanking rankBoard(
+            Board b, 
+            int repetitions,
+            StringBuilder sb,
+            RandomSource random,
+            long deadline,
+            boolean bridgePolicy) {
+        
+        Playout playout = new Playout(b.getSize(), random);
+        playout.setBridgePolicy(bridgePolicy);
+        playout.load(b);
         int noOfEmptyFields = b.getNoOfEmptyFields();
-        int movesPlayed = b.getSize() * b.getSize() - noOfEmptyFields;
-        byte player = b.whosOnTheMove();
-        Coordinate[] emptyFields = b.getEmptyFields();
-        MCSimulationMove[] moves = new MCSimulationMove[noOfEmptyFields];
-
-        //for each of the empty fields on the board
-        for (int field = 0; field < noOfEmptyFields; field++) {
-
-            int thisFieldWinSum = 0;
-            
-            //mark current "empty" field as this player's and then run the
-            //simulation on the rest of the empty fields
-            boardCopy.putMarkHard(
-                    new Coordinate(emptyFields[field].row, emptyFields[field].col), 
-                    player
-            );
-            
-            //make repetitions
-            for (int repetition = 0; repetition < repetitions; repetition++) {
-                //boolean ok = false;
-                //while a board, which doesn't have both players as winners,
-                //isn't generated
-                //while (!ok) {
-                //ok = true;
-                //get random sequence
-                byte[] sequence = MonteCarlo.getRandomSequence(
-                        movesPlayed, 
-                        boardCopy.getSize() * boardCopy.getSize());
+        int[] emptyFields = emptyFieldsInOrder(b);
+        int[] wins = new int[noOfEmptyFields];
+        int noOfEvaluated = noOfFieldsToEvaluate(b, noOfEmptyFields);
+        
+        if (deadline == 0) {
+            //for each of the empty fields on the board that has to be evaluated
+            for (int field = 0; field < noOfEvaluated; field++) {
+                wins[field] = playout.simulate(emptyFields[field], repetitions);
+            }
+            copySymmetric(wins, noOfEvaluated);
 
-                //overlay the random sequence on top of the boardCopy 
-                //skipping the field that's being tested
-                int seqCount = 0;
-                for (int iCount = 0; iCount < emptyFields.length; iCount++) {
-                    if (iCount != field) {
-                        Coordinate c = emptyFields[iCount];
-                        boardCopy.putMarkHard(
-                                new Coordinate(c.row, c.col), sequence[seqCount]);
-                    }
-                    seqCount++;
+            return rankMoves(b, emptyFields, wins, null, repetitions, sb);
+        }
+        
+        int[] visits = new int[noOfEmptyFields];
+        int unitsPerField = 
+                (repetitions + REPETITIONS_PER_WORK_UNIT - 1) 
+                / REPETITIONS_PER_WORK_UNIT;
+        
+        //a unit of work for every field in turn, until the time is up
+        for (int unit = 0; unit < noOfEvaluated * unitsPerField 
+                && !Player.isPast(deadline); unit++) {
+            int field = unit % noOfEvaluated;
+            int unitRepetitions = 
+                    Math.min(REPETITIONS_PER_WORK_UNIT, repetitions - visits[field]);
+            wins[field] += playout.simulate(emptyFields[field], 
+                    unitRepetitions);
+            visits[field] += unitRepetitions;
+        }
+        copySymmetric(wins, noOfEvaluated);
+        copySymmetric(visits, noOfEvaluated);
+        
+        return rankMoves(b, emptyFields, wins, visits, repetitions, sb);
+    }
+    
+    /**
+     * Parallel evaluation. Every (field, batch of repetitions) pair is a unit
+     * of work. Workers take units from a shared queue until it is empty or
+     * the deadline passes, each one with its own playout kernel and its own
+     * random number generator. Units go to the fields in turns, so when the
+     * deadline passes, all of the fields have had about the same number of
+     * repetitions.
+     * 
+     * The generator is reseeded for every unit of work from a seed taken from
+     * the given source, so the result doesn't depend on which worker took
+     * which unit: for a given seed it's the same with any number of workers.
+     * It's not the same as the result of the sequential evaluation, which
+     * doesn't reseed, so the win counts differ.
+     * 
+     * @param b Board to be evaluated
+     * @param repetitions Repetitions per empty field
+     * @param sb StringBuilder used for collecting data, can be null
+     * @param pool Pool which runs the workers
+     * @param workers How many workers should be submitted to the pool
+     * @param random Source of random numbers
+     * @param deadline System.nanoTime() at which the evaluation stops, 0 for
+     * no deadline
+     * @param bridgePolicy Should playouts save bridges
+     * @return Ranked moves
+     */
+    private static MoveRanking rankBoard(
+            Board b, 
+            int repetitions,
+            StringBuilder sb,
+            ExecutorService pool,
+            int workers,
+            RandomSource random,
+            long deadline,
+            boolean bridgePolicy) {
+        
+        final long seed = random.nextLong();
+        final int noOfEmptyFields = b.getNoOfEmptyFields();
+        final int[] emptyFields = emptyFieldsInOrder(b);
+        final int unitsPerField = 
+                (repetitions + REPETITIONS_PER_WORK_UNIT - 1) 
+                / REPETITIONS_PER_WORK_UNIT;
+        final int noOfEvaluated = noOfFieldsToEvaluate(b, noOfEmptyFields);
+        final int noOfUnits = noOfEvaluated * unitsPerField;
+        final AtomicInteger nextUnit = new AtomicInteger();
+        
+        List<Callable<int[][]>> tasks = new ArrayList<>(workers);
+        for (int iCount = 0; iCount < workers; iCount++) {
+            tasks.add(() -> {
+                Xoshiro256 workerRandom = new Xoshiro256(seed);
+                Playout playout = new Playout(b.getSize(), workerRandom);
+                playout.setBridgePolicy(bridgePolicy);
+                playout.load(b);
+                int[] workerWins = new int[noOfEmptyFields];
+                int[] workerVisits = new int[noOfEmptyFields];
+                
+                //take units of work until there are none left, the fields
+                //take turns
+                for (int unit = nextUnit.getAndIncrement(); unit < noOfUnits
+                        && !Player.isPast(deadline); 
+                        unit = nextUnit.getAndIncrement()) {
+                    int field = unit % noOfEvaluated;
+                    int done = (unit / noOfEvaluated) * REPETITIONS_PER_WORK_UNIT;
+                    int unitRepetitions = 
+                            Math.min(REPETITIONS_PER_WORK_UNIT, repetitions - done);
+                    workerRandom.setSeed(seed + unit * 0x9E3779B97F4A7C15L);
+                    workerWins[field] += playout.simulate(
+                            emptyFields[field], unitRepetitions);
+                    workerVisits[field] += unitRepetitions;
                 }
-                    
-                    //discard the board if both players won
-//                    if (MonteCarlo.didPlayerWin(boardCopy, player) && 
-//                            (MonteCarlo.didPlayerWin(boardCopy, 
-//                                Board.calculateNextPlayer(player)))) { 
-//                        ok = false;
-//                    }
-                //}
-
-                //check if current player won
-                if (MonteCarlo.didPlayerWin(boardCopy, player)) {
-                    thisFieldWinSum++;
+                
+                return new int[][] { workerWins, workerVisits };
+            });
+        }
+        
+        //add up the wins of all the workers
+        int[] wins = new int[noOfEmptyFields];
+        int[] visits = new int[noOfEmptyFields];
+        try {
+            for (Future<int[][]> future : pool.invokeAll(tasks)) {
+                int[][] workerResult = future.get();
+                for (int field = 0; field < noOfEmptyFields; field++) {
+                    wins[field] += workerResult[0][field];
+                    visits[field] += workerResult[1][field];
                 }
             }
-            
-            //write down the result for this empty field
-            moves[field] = new MCSimulationMove(emptyFields[field], thisFieldWinSum * 1.0);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Evaluation was interrupted.", ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Evaluation failed.", ex.getCause());
         }
-
-        //sort the moves array so that the first item has the highes probability
-        Arrays.sort(moves, Comparator.reverseOrder());
+        copySymmetric(wins, noOfEvaluated);
+        copySymmetric(visits, noOfEvaluated);
         
-        //add data to StringBuilder
-        if (sb != null) {
-            Board boardRecord = b.deepCopy();
+        return rankMoves(b, emptyFields, wins, visits, repetitions, sb);
+    }
+    
+    /**
+     * Adaptive evaluation, which doesn't spend the same number of playouts
+     * on every empty field. It uses successive halving: the budget of
+     * repetitions * (number of empty fields) playouts is split evenly
+     * between log2(number of empty fields) rounds, every round is split
+     * evenly between the fields that are still in, and after every round the
+     * worse half of the fields is dropped. It stops early when the best field
+     * is ahead of the second one by more than CONFIDENCE_Z standard errors.
+     * 
+     * All of the fields are still returned, ranked by the round they were
+     * dropped in (the ones that stayed longer first, the round is the stage
+     * of the move in the MoveRanking), and then by their win rate. The
+     * probability of a move is its win rate times repetitions, like in
+     * evaluateBoard, so it's recorded in the same way.
+     * 
+     * @param b Board to be evaluated
+     * @param repetitions Average repetitions per empty field
+     * @param sb StringBuilder used for collecting data, can be null
+     * @param random Source of random numbers
+     * @param bridgePolicy Should playouts save bridges
+     * @return Ranked moves
+     */
+    private static MoveRanking rankBoardAdaptive(
+            Board b, 
+            int repetitions,
+            StringBuilder sb,
+            RandomSource random,
+            boolean bridgePolicy) {
+        
+        Playout playout = new Playout(b.getSize(), random);
+        playout.setBridgePolicy(bridgePolicy);
+        playout.load(b);
+        final int noOfEmptyFields = b.getNoOfEmptyFields();
+        final int[] emptyFields = emptyFieldsInOrder(b);
+        final int noOfEvaluated = noOfFieldsToEvaluate(b, noOfEmptyFields);
+        final int[] wins = new int[noOfEmptyFields];
+        final int[] visits = new int[noOfEmptyFields];
+        final int[] lastRound = new int[noOfEmptyFields];
+        final double[] rate = new double[noOfEvaluated];
+        
+        //fields that are still in, the best ones first after every round
+        int[] alive = new int[noOfEvaluated];
+        int[] scratch = new int[noOfEvaluated];
+        for (int field = 0; field < noOfEvaluated; field++) {
+            alive[field] = field;
+        }
+        int noOfAlive = noOfEvaluated;
+        
+        long budget = (long) repetitions * noOfEvaluated;
+        int rounds = Math.max(1, 
+                32 - Integer.numberOfLeadingZeros(Math.max(noOfEvaluated - 1, 0)));
+        
+        for (int round = 0; round < rounds && noOfAlive > 0; round++) {
+            int perField = (int) Math.max(1, budget / ((long) noOfAlive * rounds));
             
-            //for each of the fields in moves
-            for (int iCount = 0; iCount < noOfEmptyFields; iCount++) {
-                //add players mark
-                boardRecord.putMarkHard(moves[iCount].getCoordinates(), player);
-                
-                //add a new line
-                sb.append(boardRecord.toSingleRowString(false));
-                sb.append(iCount == 0 ? 
-                        moves[iCount].getProbability() / repetitions : 
-                        (moves[iCount].getProbability() / repetitions) * 1.0);
-                sb.append(System.lineSeparator());
-
-                //remove players mark
-                boardRecord.putMarkHard(moves[iCount].getCoordinates(), (byte)0);
+            for (int k = 0; k < noOfAlive; k++) {
+                int field = alive[k];
+                wins[field] += playout.simulate(emptyFields[field], perField);
+                visits[field] += perField;
+                lastRound[field] = round;
+                rate[field] = winRate(wins, visits, field);
+            }
+            sortByRate(alive, scratch, noOfAlive, rate);
+            
+            if (noOfAlive == 1 || isSeparated(wins, visits, alive[0], alive[1])) {
+                break;
             }
+            noOfAlive = (noOfAlive + 1) / 2;
         }
         
-        return moves;
+        //symmetric pairs of the evaluated fields
+        for (int field = noOfEvaluated; field < noOfEmptyFields; field++) {
+            int pair = noOfEmptyFields - 1 - field;
+            wins[field] = wins[pair];
+            visits[field] = visits[pair];
+            lastRound[field] = lastRound[pair];
+        }
+        
+        //rank the fields by the round they got to, then by their win rate
+        MoveRanking ranking = new MoveRanking(b.getSize(), repetitions, 
+                emptyFields, wins, visits, lastRound);
+        recordMoves(b, ranking, sb);
+        
+        return ranking;
     }
     
     /**
-     * Makes a random sequence of moves.
+     * Sorts the first n fields by their win rate, the best first, with a
+     * bottom-up merge sort. Fields with the same win rate keep their order.
      * 
-     * @param movesPlayed
-     * @param boardSize
-     * @return 
+     * @param fields Fields to be sorted
+     * @param scratch Scratch space, at least n long
+     * @param n Number of fields
+     * @param rate Win rate of every field
      */
-    private static byte[] getRandomSequence(int movesPlayed, int boardSize) {
-        byte[] result = getSequence(movesPlayed, boardSize);
-        shuffleArray(result);
-        return result;
+    private static void sortByRate(int[] fields, int[] scratch, int n, 
+            double[] rate) {
+        int[] from = fields;
+        int[] to = scratch;
+        for (int width = 1; width < n; width *= 2) {
+            for (int start = 0; start < n; start += 2 * width) {
+                int middle = Math.min(start + width, n);
+                int end = Math.min(start + 2 * width, n);
+                int i = start;
+                int j = middle;
+                for (int out = start; out < end; out++) {
+                    to[out] = j >= end || (i < middle && rate[from[i]] >= rate[from[j]])
+                            ? from[i++] : from[j++];
+                }
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        if (from != fields) {
+            System.arraycopy(from, 0, fields, 0, n);
+        }
     }
-
+    
+    /**
+     * Win rate of the field, 0 if it wasn't simulated.
+     */
+    private static double winRate(int[] wins, int[] visits, int field) {
+        return visits[field] == 0 ? 0 : (double) wins[field] / visits[field];
+    }
+    
     /**
-     * Makes a non-random sequence of moves.
+     * Is the best field ahead of the second one by more than CONFIDENCE_Z
+     * standard errors of the difference of their win rates.
      * 
-     * @param movesPlayed
-     * @param boardSize
-     * @return 
+     * @param wins Wins of the fields
+     * @param visits Playouts of the fields
+     * @param best Best field
+     * @param second Second best field
+     * @return true if the best field is clearly better
      */
-    private static byte[] getSequence(int movesPlayed, int boardSize) {
-        byte[] result = new byte[boardSize - movesPlayed];
-        int ones = getNumberOfFirstPlayersMoves(movesPlayed, boardSize);
-        
-        //fill in the ones and twos
-        for (int iCount = 0; iCount < result.length; iCount++) {
-            result[iCount] = iCount < ones ? (byte) 1 : (byte) 2;
+    private static boolean isSeparated(int[] wins, int[] visits, int best, int second) {
+        double p1 = winRate(wins, visits, best);
+        double p2 = winRate(wins, visits, second);
+        //the added 1 / visits keeps the error from being 0 at rates of 0 and 1
+        double variance = (p1 * (1 - p1) + 1.0 / visits[best]) / visits[best]
+                + (p2 * (1 - p2) + 1.0 / visits[second]) / visits[second];
+        return p1 - p2 > CONFIDENCE_Z * Math.sqrt(variance);
+    }
+    
+    /**
+     * Empty fields of the board, taken from its list of empty fields. If the
+     * board is the same after turning it by 180 degrees (like the empty
+     * board), the empty fields come in pairs that are just as good, field i
+     * and field size * size - 1 - i. They're put so that the k-th field and
+     * the k-th one from the end are a pair, with the middle field (its own
+     * pair) in the middle.
+     * 
+     * @param b Evaluated board
+     * @return Indices of the empty fields
+     */
+    private static int[] emptyFieldsInOrder(Board b) {
+        int noOfEmptyFields = b.getNoOfEmptyFields();
+        int[] empties = b.getEmptyFieldIndices();
+        if (!BoardSymmetry.ROTATE_180.isSymmetric(b)) {
+            return Arrays.copyOf(empties, noOfEmptyFields);
         }
         
+        int last = b.getSize() * b.getSize() - 1;
+        int[] result = new int[noOfEmptyFields];
+        int k = 0;
+        for (int position = 0; position < noOfEmptyFields; position++) {
+            int field = empties[position];
+            if (field < last - field) {
+                result[k] = field;
+                result[noOfEmptyFields - 1 - k] = last - field;
+                k++;
+            } else if (field == last - field) {
+                result[noOfEmptyFields / 2] = field;
+            }
+        }
         return result;
     }
     
     /**
-     * Returns how many ones or first player's moves should be in the random
-     * sequence.
+     * How many of the empty fields have to be evaluated. If the board is the
+     * same after turning it by 180 degrees, only the first half of the fields
+     * from emptyFieldsInOrder, including the middle field, have to be
+     * evaluated, and the rest are their pairs.
+     * 
+     * @param b Evaluated board
+     * @param noOfEmptyFields Number of empty fields
+     * @return Number of the first empty fields that have to be evaluated
+     */
+    private static int noOfFieldsToEvaluate(Board b, int noOfEmptyFields) {
+        return BoardSymmetry.ROTATE_180.isSymmetric(b) 
+                ? (noOfEmptyFields + 1) / 2 : noOfEmptyFields;
+    }
+    
+    /**
+     * Copies the wins (or playouts) of the evaluated fields to their
+     * symmetric pairs.
+     * 
+     * @param values Wins or playouts for each of the empty fields
+     * @param noOfEvaluated Number of evaluated fields
+     */
+    private static void copySymmetric(int[] values, int noOfEvaluated) {
+        for (int field = noOfEvaluated; field < values.length; field++) {
+            values[field] = values[values.length - 1 - field];
+        }
+    }
+    
+    /**
+     * Makes the MoveRanking out of simulation results and records it in the
+     * StringBuilder.
      * 
-     * @param movesPlayed Moved played so far in the game
-     * @param boardSize Size of the board
-     * @return Number of first players moves
+     * @param b Evaluated board
+     * @param emptyFields Empty fields of the evaluated board, see
+     * emptyFieldsInOrder
+     * @param wins Number of won simulations for each of the empty fields
+     * @param visits Number of simulations for each of the empty fields, null
+     * if every field had all of the repetitions
+     * @param repetitions Repetitions per empty field
+     * @param sb StringBuilder used for collecting data, can be null
+     * @return Ranked moves
      */
-    private static int getNumberOfFirstPlayersMoves(int movesPlayed, 
-            int boardSize) {
+    private static MoveRanking rankMoves(
+            Board b,
+            int[] emptyFields,
+            int[] wins,
+            int[] visits,
+            int repetitions,
+            StringBuilder sb) {
+        
+        //the result for each empty field is scaled to repetitions if it had
+        //fewer simulations
+        MoveRanking ranking = new MoveRanking(b.getSize(), repetitions, 
+                emptyFields, wins, visits, null);
         
-        int length = boardSize - movesPlayed - 1;
-        int result = (int) Math.floor(length / 2);
+        //add data to StringBuilder
+        recordMoves(b, ranking, sb);
+        
+        return ranking;
+    }
+    
+    /**
+     * Records the ranked moves in the StringBuilder: for each of the moves a
+     * line with the board after the move and the probability of winning.
+     * 
+     * @param b Evaluated board
+     * @param ranking Moves ranked by evaluateBoard
+     * @param sb StringBuilder used for collecting data, can be null
+     */
+    static void recordMoves(
+            Board b, 
+            MoveRanking ranking, 
+            StringBuilder sb) {
         
-        if (movesPlayed % 2 == 1) {
-            if (length % 2 == 1) { result += 1; }
+        if (sb != null) {
+            Board boardRecord = b.deepCopy();
+            byte player = b.whosOnTheMove();
+            int repetitions = ranking.getRepetitions();
+            
+            //for each of the fields in the ranking
+            for (int iCount = 0; iCount < ranking.getNoOfMoves(); iCount++) {
+                //add players mark
+                boardRecord.putMarkHard(ranking.getField(iCount), player);
+                
+                //add a new line
+                sb.append(boardRecord.toSingleRowString(false));
+                sb.append(iCount == 0 ? 
+                        ranking.getProbability(iCount) / repetitions : 
+                        (ranking.getProbability(iCount) / repetitions) * 1.0);
+                sb.append(System.lineSeparator());
+
+                //remove players mark
+                boardRecord.putMarkHard(ranking.getField(iCount), (byte)0);
+            }
         }
-       
-        return result;
     }
     
     /**
@@ -173,75 +596,93 @@ public class MonteCarlo {
      * @param ar Array of bytes
      */
     public static void shuffleArray(byte[] ar) {
+        shuffleArray(ar, Xoshiro256.current());
+    }
+    
+    /**
+     * Shuffles the byte array using the given source of random numbers.
+     * 
+     * @param ar Array of bytes
+     * @param random Source of random numbers
+     */
+    public static void shuffleArray(byte[] ar, RandomSource random) {
         int N = ar.length;
         for (int i = 0; i < N; i++) {
             // choose index uniformly in [i, N-1]
-            int r = i + (int) (Math.random() * (N - i));
+            int r = i + random.nextInt(N - i);
             byte swap = ar[r];
             ar[r] = ar[i];
             ar[i] = swap;
         }
     }
     
+    /**
+     * Checks if player won on the board b. Grows the set of vertical player 
+     * fields (1) reachable from the top row on the bitboard until it reaches
+     * the bottom row or stops growing. If it doesn't reach the bottom row 
+     * => player two won.
+     * 
+     * @param b
+     * @param player
+     * @return True if player won, false otherwise.
+     */
+    public static boolean didPlayerWin(Board b, byte player) {
+        return WinDetector.forSize(b.getSize()).didPlayerWin(b, player);
+    }
+    
     /**
      * Checks if player won on the board b. Checks from top to bottom in each 
      * row if there is vertical player fields (1) that are somehow connected to 
      * active vertical players fields from previous row. If it doesn't find any 
      * active vertical field in row, then halt => player two won.
      * 
+     * This was used before didPlayerWin worked on bitboards. Paths that go
+     * back up a row are not followed, so for some boards it reports a win for
+     * player two when player one is connected.
+     * 
      * @param b
      * @param player
      * @return True if player won, false otherwise.
      */
-    public static boolean didPlayerWin(Board b, byte player) {
-        //booleans that indicate that on [i] position in currentRow there is 
-        //active vertical field field that's marked by player0
-        boolean[] activeVerticalFieldsInRow = new boolean[b.getSize()];
-        
-        //for first row all "previous" row fields are active 
-        for (int i = 0; i < b.getSize(); i++) {
-            activeVerticalFieldsInRow[i] = true;
-        }
-        
-        int currentRow = 0;
-        boolean winnerUndetermined = true;
-        byte playerWon = 1;
-        
-        while (winnerUndetermined && currentRow < b.getSize()) {
-            activeVerticalFieldsInRow = getPotentialsInRow(b, currentRow, activeVerticalFieldsInRow);
-            checkForMissedActiveFields(b, currentRow, activeVerticalFieldsInRow);
-            if (anyVerticalPlayerOnPotentialFieldInRow(b, currentRow, activeVerticalFieldsInRow)) {
-                currentRow++;
-            } else {
-                winnerUndetermined = false;
-                playerWon = 2;
+    public static boolean didPlayerWinRowScan(Board b, byte player) {
+        BoardGeometry geometry = b.getGeometry();
+        int size = b.getSize();
+        
+        //active[i] is true if i is an active vertical field, the edge above
+        //the first row is active too
+        boolean[] active = new boolean[geometry.getNoOfFields() + 4];
+        active[geometry.getEdgeNode(BoardGeometry.TOP)] = true;
+        
+        for (int row = 0; row < size; row++) {
+            int first = row * size;
+            getPotentialsInRow(b, geometry, first, active);
+            checkForMissedActiveFields(b, geometry, first, active);
+            if (!anyActiveFieldInRow(size, first, active)) {
+                return player == 2;
             }
         }
-        return playerWon == player;
+        return player == 1;
     }    
     
     /**
-     * checks if there is any active field in currentRow
-     * @param b
-     * @param row
-     * @param activeFields
+     * checks if there is any active field in the row
+     * @param size
+     * @param first index of the first field in the row
+     * @param active
      * @return 
      */
-    private static boolean anyVerticalPlayerOnPotentialFieldInRow(
-            Board b, 
-            int row, 
-            boolean[] activeFields) {
-        
-        for (int i = 0; i < b.getSize(); i++) {
-            if (activeFields[i] && b.isFieldVertical(new Coordinate(row, i))) {
+    private static boolean anyActiveFieldInRow(int size, int first, boolean[] active) {
+        for (int i = first; i < first + size; i++) {
+            if (active[i]) {
                 return true;
             }
         }
         return false;
-
     }
+    
     /**
      * marks all fields that are active based on connection with active fields from previous row
+     * (the neighbors in directions 0 and 1 in BoardGeometry)
      * this doesn't find all active fields in row, only ones that are connected with previous row
      * ex: t = 
      * 1 2 2
@@ -250,18 +691,15 @@ public class MonteCarlo {
      * t[1][1] won't be marked as active, because fields from previous row that t[1][1]is connected to
      * (t[0][1],t[0][2]) are not active
      * @param b
-     * @param row
-     * @param previousRowActiveFields
-     * @return 
+     * @param geometry
+     * @param first index of the first field in the row
+     * @param active 
      */
-    private static boolean[] getPotentialsInRow(Board b, int row, boolean[] previousRowActiveFields) {
-        boolean potentials[] = new boolean[b.getSize()];
-        for (int i = 0; i < b.getSize() - 1; i++) {
-            potentials[i] = b.isFieldVertical(new Coordinate(row, i)) && (previousRowActiveFields[i] || previousRowActiveFields[i + 1]);
-        }
-        potentials[b.getSize() - 1] = b.isFieldVertical(new Coordinate(row, b.getSize() - 1))
-                && previousRowActiveFields[b.getSize() - 1];
-        return potentials;
+    private static void getPotentialsInRow(Board b, BoardGeometry geometry, int first, boolean[] active) {
+        for (int i = first; i < first + b.getSize(); i++) {
+            active[i] = b.getFieldMark(i) == 1 
+                    && (active[geometry.getNeighbor(i, 0)] || active[geometry.getNeighbor(i, 1)]);
+        }
     }
     /**
      * finds active fields in row that are horizontally connected to some active field
@@ -269,19 +707,140 @@ public class MonteCarlo {
      * This function marks t[1][1] and t[1][2] from previous example as active
      * based on connection with t[1][0] that is marked as active by getPotentialsInRow()
      * @param b
-     * @param currentRow
-     * @param activeVerticalFieldsInRow 
+     * @param geometry
+     * @param first index of the first field in the row
+     * @param active 
      */
-    private static void checkForMissedActiveFields(Board b, int currentRow, boolean[] activeVerticalFieldsInRow) {
-        for (int i = 1; i < b.getSize(); i++) {
-            if (!activeVerticalFieldsInRow[i] && b.isFieldVertical(new Coordinate(currentRow, i))) {
-                activeVerticalFieldsInRow[i] = activeVerticalFieldsInRow[i - 1];
+    private static void checkForMissedActiveFields(Board b, BoardGeometry geometry, int first, boolean[] active) {
+        int size = b.getSize();
+        for (int i = first + 1; i < first + size; i++) {
+            if (!active[i] && b.getFieldMark(i) == 1) {
+                active[i] = active[geometry.getNeighbor(i, 5)];
             }
         }
-        for (int i = b.getSize() - 2; i > 0; i--) {
-            if (!activeVerticalFieldsInRow[i] && b.isFieldVertical(new Coordinate(currentRow, i))) {
-                activeVerticalFieldsInRow[i] = activeVerticalFieldsInRow[i + 1];
+        for (int i = first + size - 2; i > first; i--) {
+            if (!active[i] && b.getFieldMark(i) == 1) {
+                active[i] = active[geometry.getNeighbor(i, 2)];
+            }
+        }
+    }
+    
+    /**
+     * How rankBoard evaluates a board. By default the evaluation runs on the
+     * calling thread with Xoshiro256.current() as the source of random
+     * numbers, without a deadline and without the bridge policy.
+     */
+    public static final class Options {
+        
+        /**
+         * Source of random numbers, null for Xoshiro256.current().
+         */
+        private RandomSource random;
+        
+        /**
+         * System.nanoTime() at which the evaluation stops, 0 for no deadline.
+         */
+        private long deadline;
+        
+        /**
+         * Do the playouts save bridges (see Playout).
+         */
+        private boolean bridgePolicy;
+        
+        /**
+         * Is the adaptive evaluation used.
+         */
+        private boolean adaptive;
+        
+        /**
+         * Pool which runs the workers, null to run on the calling thread.
+         */
+        private ExecutorService pool;
+        private int workers = 1;
+        
+        public RandomSource getRandom() {
+            return random;
+        }
+        
+        /**
+         * Sets the source of random numbers. Evaluating the same board with
+         * sources created from the same seed gives the same result, and with
+         * a pool that's true for any number of workers.
+         * 
+         * @param random Source of random numbers, null for 
+         * Xoshiro256.current()
+         */
+        public void setRandom(RandomSource random) {
+            this.random = random;
+        }
+        
+        public long getDeadline() {
+            return deadline;
+        }
+        
+        /**
+         * Sets the deadline. When it passes the evaluation stops, and the
+         * moves are ranked by their win rates so far. The adaptive evaluation
+         * can't have a deadline.
+         * 
+         * @param deadline System.nanoTime() at which the evaluation stops, 0
+         * for no deadline
+         */
+        public void setDeadline(long deadline) {
+            this.deadline = deadline;
+        }
+        
+        public boolean isBridgePolicy() {
+            return bridgePolicy;
+        }
+        
+        /**
+         * Turns the bridge policy of the playouts on or off (see Playout).
+         * 
+         * @param bridgePolicy true to save bridges in playouts
+         */
+        public void setBridgePolicy(boolean bridgePolicy) {
+            this.bridgePolicy = bridgePolicy;
+        }
+        
+        public boolean isAdaptive() {
+            return adaptive;
+        }
+        
+        /**
+         * Chooses the adaptive evaluation (successive halving), which drops
+         * the bad fields early and spends the rest of the playouts on the
+         * good ones. It always runs on the calling thread, so the pool isn't
+         * used.
+         * 
+         * @param adaptive true for the adaptive evaluation
+         */
+        public void setAdaptive(boolean adaptive) {
+            this.adaptive = adaptive;
+        }
+        
+        public ExecutorService getPool() {
+            return pool;
+        }
+        
+        public int getWorkers() {
+            return workers;
+        }
+        
+        /**
+         * Spreads the simulations across workers submitted to the pool. The
+         * pool is not shut down by the evaluation.
+         * 
+         * @param pool Pool which runs the workers, null to run on the calling
+         * thread
+         * @param workers How many workers should be submitted to the pool
+         */
+        public void setPool(ExecutorService pool, int workers) {
+            if (workers < 1) {
+                throw new IllegalArgumentException("workers must be at least 1.");
             }
+            this.pool = pool;
+            this.workers = workers;
         }
     }
-}
\ No newline at end of file
+}
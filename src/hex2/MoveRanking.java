@@ -0,0 +1,294 @@
+package hex2;
+
+/**
+ * Moves ranked by MonteCarlo, kept in parallel primitive arrays: the field of
+ * every move (row * size + col), in how many simulations the player on the
+ * move won with it and how many simulations it had. The probability of a move
+ * is its win rate times repetitions, so that a move that had all of the
+ * repetitions has the number of simulations it won as its probability.
+ *
+ * The moves are ranked by their probability, the best first; moves with the
+ * same probability keep the order they were given in. The adaptive
+ * evaluation also gives every move a stage (the round it got to), which is
+ * compared before the probability.
+ *
+ * Ranking is done only as far as it's asked for: asking for the k-th best
+ * move puts the moves in a binary heap once and then takes the best k moves
+ * out of it, so asking for the best move only costs a pass over the moves.
+ * If the first move asked for is in the worse half, all of the moves are
+ * merge sorted instead (toMoves asks for the last one first).
+ *
+ * A MoveRanking is not thread safe, since it ranks the moves when they're
+ * first asked for. Every thread should use its own (see copy).
+ *
+ * @author Ljubo Raicevic <rljubo90@gmail.com>
+ */
+public final class MoveRanking {
+
+    /**
+     * Board size and repetitions per move.
+     */
+    private final int size;
+    private final int repetitions;
+
+    /**
+     * Field, wins, simulations (null if every move had all of the
+     * repetitions), stage (null if there are no stages) and probability of
+     * every move, in the order they were given in. Never changed, so they're
+     * shared between copies.
+     */
+    private final int[] fields;
+    private final int[] wins;
+    private final int[] visits;
+    private final int[] stage;
+    private final double[] probability;
+
+    /**
+     * Moves (indices into the arrays above) ranked so far, best first.
+     */
+    private int[] ranked;
+    private int noOfRanked;
+
+    /**
+     * Binary heap of the moves that aren't ranked yet, the best one on top.
+     */
+    private int[] heap;
+    private int heapSize;
+
+    /**
+     * Initializes a ranking of the moves. The arrays are not copied and must
+     * not be changed afterwards.
+     *
+     * @param size Board size
+     * @param repetitions Repetitions per move
+     * @param fields Field of every move
+     * @param wins Simulations won with every move
+     * @param visits Simulations of every move, null if every move had all of
+     * the repetitions
+     * @param stage Stage of every move, null if there are no stages
+     */
+    MoveRanking(int size, int repetitions, int[] fields, int[] wins,
+            int[] visits, int[] stage) {
+        this.size = size;
+        this.repetitions = repetitions;
+        this.fields = fields;
+        this.wins = wins;
+        this.visits = visits;
+        this.stage = stage;
+        this.probability = new double[fields.length];
+
+        for (int move = 0; move < fields.length; move++) {
+            probability[move] = visits == null ? wins[move]
+                    : visits[move] == 0 ? 0
+                    : (double) wins[move] * repetitions / visits[move];
+        }
+    }
+
+    /**
+     * Initializes a ranking with other fields and the same results.
+     */
+    private MoveRanking(MoveRanking other, int[] fields) {
+        this.size = other.size;
+        this.repetitions = other.repetitions;
+        this.fields = fields;
+        this.wins = other.wins;
+        this.visits = other.visits;
+        this.stage = other.stage;
+        this.probability = other.probability;
+    }
+
+    public int getNoOfMoves() {
+        return fields.length;
+    }
+
+    public int getRepetitions() {
+        return repetitions;
+    }
+
+    /**
+     * Field of the k-th best move.
+     *
+     * @param k Rank, 0 for the best move
+     * @return Index of the field, row * size + col
+     */
+    public int getField(int k) {
+        return fields[rank(k)];
+    }
+
+    /**
+     * Probability of the k-th best move: its win rate times repetitions.
+     *
+     * @param k Rank, 0 for the best move
+     * @return Probability
+     */
+    public double getProbability(int k) {
+        return probability[rank(k)];
+    }
+
+    /**
+     * Simulations won with the k-th best move.
+     *
+     * @param k Rank, 0 for the best move
+     * @return Number of simulations won
+     */
+    public int getWins(int k) {
+        return wins[rank(k)];
+    }
+
+    /**
+     * Simulations of the k-th best move.
+     *
+     * @param k Rank, 0 for the best move
+     * @return Number of simulations
+     */
+    public int getVisits(int k) {
+        return visits == null ? repetitions : visits[rank(k)];
+    }
+
+    /**
+     * The k-th best move as an MCSimulationMove, made on every call.
+     *
+     * @param k Rank, 0 for the best move
+     * @return Move
+     */
+    public MCSimulationMove getMove(int k) {
+        int move = rank(k);
+        return new MCSimulationMove(fields[move], size, probability[move]);
+    }
+
+    /**
+     * All of the moves, best first, the way MonteCarlo.evaluateBoard returns
+     * them.
+     *
+     * @return Ranked moves
+     */
+    public MCSimulationMove[] toMoves() {
+        MCSimulationMove[] result = new MCSimulationMove[fields.length];
+        for (int k = fields.length - 1; k >= 0; k--) {
+            result[k] = getMove(k);
+        }
+        return result;
+    }
+
+    /**
+     * A ranking of the same moves that can be used by another thread.
+     *
+     * @return Copy of the ranking
+     */
+    public MoveRanking copy() {
+        return new MoveRanking(this, fields);
+    }
+
+    /**
+     * A ranking of the same moves with the symmetry applied to their fields.
+     *
+     * @param symmetry Symmetry
+     * @return New ranking
+     */
+    MoveRanking map(BoardSymmetry symmetry) {
+        int[] mapped = new int[fields.length];
+        for (int move = 0; move < fields.length; move++) {
+            mapped[move] = symmetry.mapField(fields[move], size);
+        }
+        return new MoveRanking(this, mapped);
+    }
+
+    /**
+     * Ranks the moves up to the k-th best one.
+     *
+     * @param k Rank
+     * @return The k-th best move
+     */
+    private int rank(int k) {
+        if (k < 0 || k >= fields.length) {
+            throw new IndexOutOfBoundsException("No move ranked " + k + ".");
+        }
+        if (ranked == null && k >= fields.length / 2) {
+            sortAll();
+        }
+        if (heap == null) {
+            ranked = new int[fields.length];
+            heap = new int[fields.length];
+            heapSize = fields.length;
+            for (int move = 0; move < heapSize; move++) {
+                heap[move] = move;
+            }
+            for (int i = heapSize / 2 - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+        }
+
+        //take the best moves out of the heap
+        while (noOfRanked <= k) {
+            ranked[noOfRanked++] = heap[0];
+            heap[0] = heap[--heapSize];
+            siftDown(0);
+        }
+        return ranked[k];
+    }
+
+    /**
+     * Ranks all of the moves at once, with a bottom-up merge sort.
+     */
+    private void sortAll() {
+        int n = fields.length;
+        int[] from = new int[n];
+        int[] to = new int[n];
+        for (int move = 0; move < n; move++) {
+            from[move] = move;
+        }
+
+        for (int width = 1; width < n; width *= 2) {
+            for (int start = 0; start < n; start += 2 * width) {
+                int middle = Math.min(start + width, n);
+                int end = Math.min(start + 2 * width, n);
+                int i = start;
+                int j = middle;
+                for (int out = start; out < end; out++) {
+                    to[out] = j >= end || (i < middle && !isBetter(from[j], from[i]))
+                            ? from[i++] : from[j++];
+                }
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+
+        ranked = from;
+        noOfRanked = n;
+        heap = to;
+        heapSize = 0;
+    }
+
+    /**
+     * Moves the entry of the heap down until both of its children are worse.
+     */
+    private void siftDown(int i) {
+        int move = heap[i];
+        int child;
+        while ((child = 2 * i + 1) < heapSize) {
+            if (child + 1 < heapSize && isBetter(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!isBetter(heap[child], move)) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = move;
+    }
+
+    /**
+     * Is the first move ranked before the second one.
+     */
+    private boolean isBetter(int a, int b) {
+        if (stage != null && stage[a] != stage[b]) {
+            return stage[a] > stage[b];
+        }
+        if (probability[a] != probability[b]) {
+            return probability[a] > probability[b];
+        }
+        return a < b;
+    }
+}
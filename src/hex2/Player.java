@@ -14,4 +14,45 @@ public interface Player {
      * @return Coordinates of next move
      */
     public Coordinate makeMove(Board b);
+    
+    /**
+     * Decides on the next move on a given board before the deadline. Players
+     * that search (Monte Carlo, MCTS) stop when the deadline passes and
+     * return the best move they found so far. The others ignore the deadline
+     * and just call makeMove(b).
+     * 
+     * @param b Board
+     * @param deadline System.nanoTime() by which the move should be made, 0
+     * for no deadline
+     * @return Coordinates of next move
+     */
+    public default Coordinate makeMove(Board b, long deadline) {
+        return makeMove(b);
+    }
+    
+    /**
+     * Same as makeMove(b, deadline), but returns the index of the field, which
+     * is what Game plays. Players that work on field indices (Monte Carlo,
+     * MCTS, neural network) override this one, so that they don't have to
+     * make a Coordinate for every move. The others return the field of
+     * their Coordinate.
+     * 
+     * @param b Board
+     * @param deadline System.nanoTime() by which the move should be made, 0
+     * for no deadline
+     * @return Index of the field of the next move, row * size + col
+     */
+    public default int makeFieldMove(Board b, long deadline) {
+        return b.coordinateToInt(makeMove(b, deadline));
+    }
+    
+    /**
+     * Has the deadline passed.
+     * 
+     * @param deadline System.nanoTime() deadline, 0 for no deadline
+     * @return true if there is a deadline and it has passed
+     */
+    public static boolean isPast(long deadline) {
+        return deadline != 0 && System.nanoTime() - deadline >= 0;
+    }
 }
\ No newline at end of file
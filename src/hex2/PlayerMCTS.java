@@ -0,0 +1,533 @@
+package hex2;
+
+/**
+ * A Monte Carlo Tree Search player. Instead of spending the same number of
+ * simulations on every empty field like PlayerMonteCarlo, it grows a tree of
+ * positions and chooses which branch to simulate next with the UCB1 formula
+ * (UCT), so most of the simulations go to the promising moves.
+ *
+ * Nodes are kept in a pool of primitive arrays, and the children of a node
+ * take up a contiguous block of the pool. After the player moves and the
+ * opponent answers, the subtree of the new position is kept and compacted to
+ * the beginning of the pool, so the work from the previous move isn't lost.
+ *
+ * Every move is limited by a number of playouts, by time, or by both.
+ *
+ * @author Ljubo Raicevic <rljubo90@gmail.com>
+ */
+public class PlayerMCTS implements Player {
+
+    /**
+     * Default number of nodes in the pool.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 19;
+
+    /**
+     * Default UCB1 exploration constant.
+     */
+    public static final double DEFAULT_EXPLORATION = 0.25;
+
+    /**
+     * A leaf gets expanded after it has been simulated this many times.
+     */
+    private static final int EXPANSION_VISITS = 8;
+
+    /**
+     * Number of playouts per move, 0 if there's no limit.
+     */
+    private final int playouts;
+
+    /**
+     * Time per move in nanoseconds, 0 if there's no limit.
+     */
+    private final long timePerMove;
+
+    /**
+     * UCB1 exploration constant.
+     */
+    private final double exploration;
+
+    /**
+     * Source of random numbers used by playouts and for ordering children.
+     */
+    private final RandomSource random;
+
+    /**
+     * Maximum number of nodes.
+     */
+    private final int capacity;
+
+    /**
+     * Node pool. For node n: move[n] is the field played to get to it,
+     * firstChild[n] is the index of its first child (-1 if it hasn't been
+     * expanded), noOfChildren[n] is the number of its children, visits[n] is
+     * the number of simulations that went through it and wins[n] is how many
+     * of them were won by the player who played move[n].
+     */
+    private int[] move;
+    private int[] firstChild;
+    private int[] noOfChildren;
+    private int[] visits;
+    private int[] wins;
+    private int noOfNodes;
+    private int root;
+
+    /**
+     * Second set of arrays, the tree gets compacted into them.
+     */
+    private int[] spareMove;
+    private int[] spareFirstChild;
+    private int[] spareNoOfChildren;
+    private int[] spareVisits;
+    private int[] spareWins;
+    private final int[] order;
+
+    /**
+     * Position in the root of the tree.
+     */
+    private Board rootBoard;
+
+    /**
+     * Playout kernel, loaded with the root position.
+     */
+    private Playout playout;
+
+    /**
+     * Moves and nodes on the path of the current simulation. nodePath[0] is
+     * the root and nodePath[d] is the node after path[d - 1] was played.
+     */
+    private int[] path;
+    private int[] nodePath;
+
+    /**
+     * Marks the fields on the path when expanding a node.
+     */
+    private int[] onPath;
+    private int stamp;
+
+    /**
+     * Do the playouts save bridges (see Playout).
+     */
+    private boolean bridgePolicy;
+
+    /**
+     * Initializes a PlayerMCTS which plays the given number of playouts per
+     * move.
+     *
+     * @param playouts Number of playouts per move
+     */
+    public PlayerMCTS(int playouts) {
+        this(playouts, 0, DEFAULT_EXPLORATION, DEFAULT_CAPACITY,
+                Xoshiro256.current().split());
+    }
+
+    /**
+     * Initializes a PlayerMCTS with a number of playouts and a time limit per
+     * move. The search stops when either of them is reached, 0 means no limit.
+     *
+     * @param playouts Number of playouts per move
+     * @param timePerMoveMillis Time per move in milliseconds
+     */
+    public PlayerMCTS(int playouts, long timePerMoveMillis) {
+        this(playouts, timePerMoveMillis, DEFAULT_EXPLORATION, DEFAULT_CAPACITY,
+                Xoshiro256.current().split());
+    }
+
+    /**
+     * Initializes a PlayerMCTS.
+     *
+     * @param playouts Number of playouts per move, 0 for no limit
+     * @param timePerMoveMillis Time per move in milliseconds, 0 for no limit
+     * @param exploration UCB1 exploration constant
+     * @param capacity Maximum number of nodes in the tree, at least
+     * size * size + 1 for the board size it plays on
+     * @param random Source of random numbers
+     */
+    public PlayerMCTS(int playouts, long timePerMoveMillis, double exploration,
+            int capacity, RandomSource random) {
+        if (playouts <= 0 && timePerMoveMillis <= 0) {
+            throw new IllegalArgumentException(
+                    "Either playouts or time per move has to be limited.");
+        }
+        this.playouts = Math.max(playouts, 0);
+        this.timePerMove = Math.max(timePerMoveMillis, 0) * 1000000L;
+        this.exploration = exploration;
+        this.capacity = capacity;
+        this.random = random;
+        this.move = new int[capacity];
+        this.firstChild = new int[capacity];
+        this.noOfChildren = new int[capacity];
+        this.visits = new int[capacity];
+        this.wins = new int[capacity];
+        this.spareMove = new int[capacity];
+        this.spareFirstChild = new int[capacity];
+        this.spareNoOfChildren = new int[capacity];
+        this.spareVisits = new int[capacity];
+        this.spareWins = new int[capacity];
+        this.order = new int[capacity];
+    }
+
+    public boolean isBridgePolicy() {
+        return bridgePolicy;
+    }
+
+    /**
+     * Turns the bridge policy of the playouts on or off (see Playout). Off by
+     * default.
+     *
+     * @param bridgePolicy true to save bridges in playouts
+     */
+    public void setBridgePolicy(boolean bridgePolicy) {
+        this.bridgePolicy = bridgePolicy;
+        if (playout != null) {
+            playout.setBridgePolicy(bridgePolicy);
+        }
+    }
+
+    /**
+     * Number of nodes in the tree after the last move.
+     *
+     * @return Number of nodes
+     */
+    public int getNoOfNodes() {
+        return noOfNodes;
+    }
+
+    /**
+     * Number of simulations that went through the root after the last move,
+     * including the ones kept from previous moves.
+     *
+     * @return Number of simulations
+     */
+    public int getRootVisits() {
+        return noOfNodes == 0 ? 0 : visits[root];
+    }
+
+    @Override
+    public Coordinate makeMove(Board b) {
+        return makeMove(b, 0);
+    }
+
+    @Override
+    public Coordinate makeMove(Board b, long deadline) {
+        return b.intToCoordinate(makeFieldMove(b, deadline));
+    }
+
+    /**
+     * Searches until the number of playouts, the time per move or the given
+     * deadline runs out, whichever comes first.
+     *
+     * @param b Board
+     * @param deadline System.nanoTime() by which the move should be made, 0
+     * for no deadline
+     * @return Index of the field of the next move
+     * @throws IllegalArgumentException if the capacity is less than
+     * size * size + 1
+     */
+    @Override
+    public int makeFieldMove(Board b, long deadline) {
+        if (timePerMove > 0) {
+            long ownDeadline = System.nanoTime() + timePerMove;
+            if (deadline == 0 || ownDeadline - deadline < 0) {
+                deadline = ownDeadline;
+            }
+        }
+
+        prepareTree(b);
+
+        //run simulations until the budget is spent
+        for (int iteration = 0;
+                playouts == 0 || iteration < playouts; iteration++) {
+            if (iteration % 64 == 0 && Player.isPast(deadline)) {
+                break;
+            }
+            simulate();
+        }
+
+        return move[bestChild()];
+    }
+
+    /**
+     * Makes the root of the tree for the board. If the board is the root
+     * position followed by the move that was chosen and an opponent's move
+     * that is in the tree, that subtree is kept. Otherwise the tree is
+     * started from scratch.
+     *
+     * @param b Board
+     */
+    private void prepareTree(Board b) {
+        int size = b.getSize();
+        if (playout == null || playout.getSize() != size) {
+            //the root and all of its children have to fit
+            if (capacity < size * size + 1) {
+                throw new IllegalArgumentException("capacity has to be at least "
+                        + (size * size + 1) + " for board size " + size + ".");
+            }
+            playout = new Playout(size, random);
+            playout.setBridgePolicy(bridgePolicy);
+            path = new int[size * size];
+            nodePath = new int[size * size + 1];
+            onPath = new int[size * size];
+            rootBoard = null;
+        }
+
+        int newRoot = findNode(b);
+        if (newRoot < 0) {
+            noOfNodes = 0;
+            root = newNode(-1);
+        } else {
+            compact(newRoot);
+        }
+
+        //the board of the root is copied into instead of made anew
+        if (rootBoard == null) {
+            rootBoard = b.deepCopy();
+        } else {
+            rootBoard.copyFrom(b);
+        }
+        playout.load(b);
+        if (firstChild[root] < 0) {
+            expand(root, 0);
+        }
+    }
+
+    /**
+     * Finds the node of the tree whose position is on the board.
+     *
+     * @param b Board
+     * @return Node, -1 if it isn't in the tree
+     */
+    private int findNode(Board b) {
+        if (rootBoard == null || noOfNodes == 0
+                || rootBoard.whosOnTheMove() != b.whosOnTheMove()) {
+            return -1;
+        }
+
+        long[] rootV = rootBoard.getVerticalBits();
+        long[] rootH = rootBoard.getHorizontalBits();
+        long[] v = b.getVerticalBits();
+        long[] h = b.getHorizontalBits();
+        int newV = -1;
+        int newH = -1;
+        int noOfNew = 0;
+
+        for (int w = 0; w < v.length; w++) {
+            //no field may be emptied or change its color
+            if ((rootV[w] & ~v[w]) != 0 || (rootH[w] & ~h[w]) != 0) {
+                return -1;
+            }
+            long addedV = v[w] & ~rootV[w];
+            long addedH = h[w] & ~rootH[w];
+            noOfNew += Long.bitCount(addedV) + Long.bitCount(addedH);
+            if (addedV != 0) { newV = (w << 6) + Long.numberOfTrailingZeros(addedV); }
+            if (addedH != 0) { newH = (w << 6) + Long.numberOfTrailingZeros(addedH); }
+        }
+
+        if (noOfNew == 0) {
+            return root;
+        }
+        if (noOfNew != 2 || newV < 0 || newH < 0) {
+            return -1;
+        }
+
+        //the player on the move played first
+        boolean verticalFirst = b.whosOnTheMove() == 1;
+        int node = findChild(root, verticalFirst ? newV : newH);
+        return node < 0 ? -1 : findChild(node, verticalFirst ? newH : newV);
+    }
+
+    /**
+     * Finds the child of the node that was reached by playing the field.
+     *
+     * @param node Node
+     * @param field Field
+     * @return Child, -1 if there isn't one
+     */
+    private int findChild(int node, int field) {
+        int first = firstChild[node];
+        if (first < 0) {
+            return -1;
+        }
+        for (int c = first; c < first + noOfChildren[node]; c++) {
+            if (move[c] == field) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Copies the subtree of the node to the beginning of the spare arrays, in
+     * breadth first order so that children stay contiguous, and then swaps
+     * the arrays.
+     *
+     * @param node New root
+     */
+    private void compact(int node) {
+        order[0] = node;
+        int count = 1;
+
+        for (int i = 0; i < count; i++) {
+            int old = order[i];
+            spareMove[i] = move[old];
+            spareVisits[i] = visits[old];
+            spareWins[i] = wins[old];
+            spareNoOfChildren[i] = noOfChildren[old];
+
+            if (firstChild[old] < 0) {
+                spareFirstChild[i] = -1;
+            } else {
+                spareFirstChild[i] = count;
+                for (int c = 0; c < noOfChildren[old]; c++) {
+                    order[count++] = firstChild[old] + c;
+                }
+            }
+        }
+
+        int[] swap;
+        swap = move;         move = spareMove;                 spareMove = swap;
+        swap = firstChild;   firstChild = spareFirstChild;     spareFirstChild = swap;
+        swap = noOfChildren; noOfChildren = spareNoOfChildren; spareNoOfChildren = swap;
+        swap = visits;       visits = spareVisits;             spareVisits = swap;
+        swap = wins;         wins = spareWins;                 spareWins = swap;
+        noOfNodes = count;
+        root = 0;
+    }
+
+    /**
+     * Runs one simulation: selects a path down the tree with UCB1, expands
+     * the leaf if it has been visited enough times, runs a playout and
+     * updates the nodes on the path.
+     */
+    private void simulate() {
+        int node = root;
+        int depth = 0;
+        nodePath[0] = root;
+
+        //selection
+        while (firstChild[node] >= 0) {
+            node = select(node);
+            path[depth++] = move[node];
+            nodePath[depth] = node;
+        }
+
+        //expansion
+        if (visits[node] >= EXPANSION_VISITS
+                && depth < playout.getNoOfEmptyFields() && expand(node, depth)) {
+            node = firstChild[node];
+            path[depth++] = move[node];
+            nodePath[depth] = node;
+        }
+
+        byte winner = playout.playout(path, depth);
+
+        //backpropagation, the root player played the moves on odd depths
+        boolean rootPlayerWon = winner == playout.whosOnTheMove();
+        visits[root]++;
+        for (int d = 1; d <= depth; d++) {
+            int n = nodePath[d];
+            visits[n]++;
+            if ((d % 2 == 1) == rootPlayerWon) {
+                wins[n]++;
+            }
+        }
+    }
+
+    /**
+     * Chooses the child with the highest UCB1 value. Children that haven't
+     * been visited come first.
+     *
+     * @param node Expanded node
+     * @return Chosen child
+     */
+    private int select(int node) {
+        int first = firstChild[node];
+        int last = first + noOfChildren[node];
+        double logVisits = Math.log(visits[node]);
+        int best = first;
+        double bestValue = Double.NEGATIVE_INFINITY;
+
+        for (int c = first; c < last; c++) {
+            int n = visits[c];
+            if (n == 0) {
+                return c;
+            }
+            double value = wins[c] / (double) n
+                    + exploration * Math.sqrt(logVisits / n);
+            if (value > bestValue) {
+                bestValue = value;
+                best = c;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Adds a child for every empty field that isn't on the path to the node,
+     * in random order.
+     *
+     * @param node Leaf
+     * @param depth Depth of the leaf, the first depth moves of path lead to it
+     * @return false if there is no room left in the pool
+     */
+    private boolean expand(int node, int depth) {
+        int children = playout.getNoOfEmptyFields() - depth;
+        if (noOfNodes + children > capacity) {
+            return false;
+        }
+
+        stamp++;
+        for (int d = 0; d < depth; d++) {
+            onPath[path[d]] = stamp;
+        }
+
+        int first = noOfNodes;
+        for (int k = 0; k < playout.getNoOfEmptyFields(); k++) {
+            int field = playout.getEmptyField(k);
+            if (onPath[field] != stamp) {
+                //insert at a random place of the block
+                int at = first + random.nextInt(noOfNodes - first + 1);
+                newNode(field);
+                move[noOfNodes - 1] = move[at];
+                move[at] = field;
+            }
+        }
+
+        firstChild[node] = first;
+        noOfChildren[node] = children;
+        return true;
+    }
+
+    /**
+     * Adds a node to the pool.
+     *
+     * @param field Field played to get to the node
+     * @return Index of the node
+     */
+    private int newNode(int field) {
+        int n = noOfNodes++;
+        move[n] = field;
+        firstChild[n] = -1;
+        noOfChildren[n] = 0;
+        visits[n] = 0;
+        wins[n] = 0;
+        return n;
+    }
+
+    /**
+     * Child of the root that was visited the most.
+     *
+     * @return Best child
+     */
+    private int bestChild() {
+        int first = firstChild[root];
+        int best = first;
+        for (int c = first; c < first + noOfChildren[root]; c++) {
+            if (visits[c] > visits[best]) {
+                best = c;
+            }
+        }
+        return best;
+    }
+}
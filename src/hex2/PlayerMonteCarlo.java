@@ -1,12 +1,20 @@
 package hex2;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * A Monte Carlo player. Uses Monte Carlo simulation from MonteCarlo.java to
  * make moves.
  * 
+ * A multi-threaded player runs the simulations in its own pool, which is
+ * shut down by close. A player can also be given a pool to run in, which it
+ * doesn't shut down, so that many players (in a Tournament, for example)
+ * don't each start their own threads.
+ * 
  * @author Ljubo Raicevic <rljubo90@gmail.com>
  */
-public class PlayerMonteCarlo implements Player {
+public class PlayerMonteCarlo implements Player, AutoCloseable {
 
     /**
      * How many times Monte Carlo simulation is run.
@@ -18,6 +26,36 @@ public class PlayerMonteCarlo implements Player {
      */
     private final StringBuilder sb;
     
+    /**
+     * Number of threads used for simulations.
+     */
+    private final int threads;
+    
+    /**
+     * Pool that runs the simulations, null if the player is single-threaded.
+     */
+    private final ExecutorService pool;
+    
+    /**
+     * Was the pool made by the player, so that it's shut down by close.
+     */
+    private final boolean ownPool;
+    
+    /**
+     * Cache of evaluated positions, null if positions are always evaluated.
+     */
+    private PositionCache cache;
+    
+    /**
+     * Are moves evaluated with MonteCarlo.evaluateBoardAdaptive.
+     */
+    private boolean adaptive;
+    
+    /**
+     * Do the playouts save bridges (see Playout).
+     */
+    private boolean bridgePolicy;
+    
     
     /**
      * Initializes a new PlayerMonteCarlo without a StringBuilder.
@@ -35,16 +73,179 @@ public class PlayerMonteCarlo implements Player {
      * @param sb StringBuilder used for collecting data about the moves
      */
     public PlayerMonteCarlo(int repetitions, StringBuilder sb) {
+        this(repetitions, sb, 1);
+    }
+    
+    /**
+     * Initializes a new multi-threaded PlayerMonteCarlo without a 
+     * StringBuilder.
+     * 
+     * @param repetitions Monte Carlo simulation repetitions
+     * @param threads Number of threads used for simulations
+     */
+    public PlayerMonteCarlo(int repetitions, int threads) {
+        this(repetitions, null, threads);
+    }
+    
+    /**
+     * Initializes a new multi-threaded PlayerMonteCarlo with a StringBuilder.
+     * 
+     * @param repetitions Monte Carlo simulation repetitions
+     * @param sb StringBuilder used for collecting data about the moves
+     * @param threads Number of threads used for simulations
+     */
+    public PlayerMonteCarlo(int repetitions, StringBuilder sb, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1.");
+        }
+        this.repetitions = repetitions;
+        this.sb = sb;
+        this.threads = threads;
+        this.pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        this.ownPool = pool != null;
+    }
+    
+    /**
+     * Initializes a new multi-threaded PlayerMonteCarlo which runs the
+     * simulations in the given pool. The pool is not shut down by close.
+     * 
+     * @param repetitions Monte Carlo simulation repetitions
+     * @param sb StringBuilder used for collecting data about the moves, can
+     * be null
+     * @param pool Pool which runs the simulations
+     * @param workers How many workers are submitted to the pool for a move
+     */
+    public PlayerMonteCarlo(int repetitions, StringBuilder sb, 
+            ExecutorService pool, int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers must be at least 1.");
+        }
         this.repetitions = repetitions;
         this.sb = sb;
+        this.threads = workers;
+        this.pool = pool;
+        this.ownPool = false;
     }
     
     public int getNumberOfRepetitions(){
         return this.repetitions;
     }
     
+    public int getNumberOfThreads() {
+        return this.threads;
+    }
+    
+    public boolean isAdaptive() {
+        return this.adaptive;
+    }
+    
+    /**
+     * Chooses between evaluating every empty field with the same number of
+     * repetitions (the default) and MonteCarlo.evaluateBoardAdaptive, which
+     * drops the bad fields early and spends the rest on the good ones. The
+     * adaptive evaluation always runs on the calling thread, and it's only
+     * used for moves without a deadline. Its evaluations are not put in the
+     * cache, since most of the moves only get a few playouts, but it still
+     * uses the positions that are in the cache.
+     * 
+     * @param adaptive true for the adaptive evaluation
+     */
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+    
+    public boolean isBridgePolicy() {
+        return this.bridgePolicy;
+    }
+    
+    /**
+     * Turns the bridge policy of the playouts on or off (see Playout). Off by
+     * default. Positions in the cache don't remember which policy they were
+     * evaluated with, so players with different policies shouldn't share a
+     * cache.
+     * 
+     * @param bridgePolicy true to save bridges in playouts
+     */
+    public void setBridgePolicy(boolean bridgePolicy) {
+        this.bridgePolicy = bridgePolicy;
+    }
+    
+    public PositionCache getCache() {
+        return this.cache;
+    }
+    
+    /**
+     * Sets the cache of evaluated positions. Positions that are in the cache
+     * (evaluated with at least as many repetitions) are not evaluated again,
+     * but they're still recorded in the StringBuilder. The cache can be
+     * shared with other players.
+     * 
+     * @param cache Position cache, null for no cache
+     */
+    public void setCache(PositionCache cache) {
+        this.cache = cache;
+    }
+    
     @Override
     public Coordinate makeMove(Board b) {
-        return MonteCarlo.evaluateBoard(b, repetitions, sb)[0].getCoordinates();
+        return makeMove(b, 0);
+    }
+    
+    @Override
+    public Coordinate makeMove(Board b, long deadline) {
+        return b.intToCoordinate(makeFieldMove(b, deadline));
+    }
+    
+    /**
+     * Evaluates the board until all of the repetitions are done or the
+     * deadline passes, whichever comes first, and plays the best move found.
+     * Evaluations that were stopped by the deadline, and adaptive ones, aren't
+     * put in the cache.
+     * 
+     * @param b Board
+     * @param deadline System.nanoTime() by which the move should be made, 0
+     * for no deadline
+     * @return Index of the field of the next move
+     */
+    @Override
+    public int makeFieldMove(Board b, long deadline) {
+        if (cache != null) {
+            PositionCache.Evaluation cached = cache.get(b, repetitions);
+            if (cached != null) {
+                MonteCarlo.recordMoves(b, cached.getRanking(), sb);
+                return cached.getRanking().getField(0);
+            }
+        }
+        
+        MonteCarlo.Options options = new MonteCarlo.Options();
+        options.setBridgePolicy(bridgePolicy);
+        if (adaptive && deadline == 0) {
+            options.setAdaptive(true);
+        } else {
+            options.setDeadline(deadline);
+            if (pool != null) {
+                options.setPool(pool, threads);
+            }
+        }
+        
+        //only the best move is ranked, unless the moves are recorded
+        MoveRanking ranking = MonteCarlo.rankBoard(b, repetitions, sb, options);
+        
+        //only full evaluations are cached, the adaptive one isn't
+        if (cache != null && !options.isAdaptive() && !Player.isPast(deadline)) {
+            cache.put(b, repetitions, ranking);
+        }
+        return ranking.getField(0);
+    }
+    
+    /**
+     * Shuts down the pool of a multi-threaded player, unless the pool was
+     * given to the player. The player can't make moves afterwards.
+     */
+    @Override
+    public void close() {
+        if (ownPool) {
+            pool.shutdown();
+        }
     }
-}
\ No newline at end of file
+}
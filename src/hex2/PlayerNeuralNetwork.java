@@ -1,11 +1,16 @@
 package hex2;
 
 import com.googlecode.fannj.Fann;
+import java.io.IOException;
 
 /**
  * A neural network player. Uses jfann library (which in turn uses fann library
  * written for C and C++) to make moves.
  * 
+ * By default the network is read from the FANN file and run in pure Java
+ * (FannNetwork), which doesn't need libfann. All of the candidate moves are
+ * written to one reused input buffer and scored in a single batch.
+ * 
  * IMPORTANT NOTE ON NEURAL NETWORKS:
  * Neural network needs to be trained from an outside (Documents/FANNTraining)
  * C++ program in order for this to work (if you use fantool you'll get
@@ -24,50 +29,113 @@ import com.googlecode.fannj.Fann;
 public class PlayerNeuralNetwork implements Player{
 
     /**
-     * A neural network that decides if the move is good or bad.
+     * A neural network that decides if the move is good or bad, run through
+     * libfann. Null if the network is run in pure Java.
      */
     private final Fann nnFan;
     
     /**
-     * Initializes a PlayerNeuralNetwork with neural network loaded from file f.
+     * The same neural network run in pure Java. Null if libfann is used.
+     */
+    private final FannNetwork network;
+    
+    /**
+     * Inputs of all the candidate moves, one after another, and their 
+     * outputs. Reused between moves.
+     */
+    private float[] inputs = new float[0];
+    private float[] outputs = new float[0];
+    
+    /**
+     * Initializes a PlayerNeuralNetwork with neural network loaded from file f
+     * and run in pure Java.
      * 
      * @param f Neural network file
      */
     public PlayerNeuralNetwork(String f) {
-        nnFan = new Fann(f);
+        this(f, false);
+    }
+    
+    /**
+     * Initializes a PlayerNeuralNetwork with neural network loaded from file f.
+     * 
+     * @param f Neural network file
+     * @param useLibfann Should the network be run through libfann instead of
+     * in pure Java
+     */
+    public PlayerNeuralNetwork(String f, boolean useLibfann) {
+        if (useLibfann) {
+            nnFan = new Fann(f);
+            network = null;
+        } else {
+            nnFan = null;
+            try {
+                network = new FannNetwork(f);
+            } catch (IOException ex) {
+                throw new IllegalArgumentException("Can't read " + f + ".", ex);
+            }
+        }
     }
     
     @Override
     public Coordinate makeMove(Board b) {
-        //make a deep copy of the board
-        Board boardCopy = b.deepCopy();
-        
-        //get coordinates of empty fields in the board
-        Coordinate[] emptyFields = b.getEmptyFields();
-
-        double bestResult = -1;
-        Coordinate bestField  = null;
+        return b.intToCoordinate(makeFieldMove(b, 0));
+    }
+    
+    /**
+     * Scores the board after every one of the empty fields with the network
+     * and plays the best one. The deadline is ignored.
+     * 
+     * @param b Board
+     * @param deadline Ignored
+     * @return Index of the field of the next move
+     */
+    @Override
+    public int makeFieldMove(Board b, long deadline) {
+        //indices of the empty fields in the board, not copied
+        int[] emptyFields = b.getEmptyFieldIndices();
         int noOfEmptyFields = b.getNoOfEmptyFields();
+        int noOfInputs = b.getSize() * b.getSize();
         byte player = b.whosOnTheMove();
         
-        //for each of the empty fields
-        for (int field = 0; field < noOfEmptyFields; field++) {
-            //set previously checked field to zero
-            if (field > 0) { 
-                Coordinate prev = emptyFields[field - 1];
-                boardCopy.putMarkHard(prev, (byte)0);
+        if (network != null && network.getNoOfInputs() != noOfInputs) {
+            throw new IllegalArgumentException("The network has " 
+                    + network.getNoOfInputs() + " inputs, the board has " 
+                    + noOfInputs + " fields.");
+        }
+        if (inputs.length < noOfEmptyFields * noOfInputs) {
+            inputs = new float[noOfEmptyFields * noOfInputs];
+            outputs = new float[noOfEmptyFields * 
+                    (network == null ? 1 : network.getNoOfOutputs())];
+        }
+        
+        //the board without the candidate move goes into the first slot
+        transformBoardToNNInput(b, player, inputs);
+        //candidate moves are marked with player + 1
+        byte mark = (byte) (player + 1);
+        float candidate = (float) (mark + f(player, mark));
+        
+        //for each of the empty fields write the board with the field marked,
+        //going backwards so that the first slot is marked after being copied
+        for (int field = noOfEmptyFields - 1; field >= 0; field--) {
+            int offset = field * noOfInputs;
+            if (field > 0) {
+                System.arraycopy(inputs, 0, inputs, offset, noOfInputs);
             }
-            
-            //put mark on the field
-            boardCopy.putMark(emptyFields[field], (byte)(player + 1));
-            
-            //ask the neural network if it likes the board
-            float[] input = transformBoardToNNInput(boardCopy, player);
-            float[] result = nnFan.run(input);
-            
-            //check if this is the best result so far
-            if (result[0] > bestResult) {
-                bestResult = result[0];
+            inputs[offset + emptyFields[field]] = candidate;
+        }
+        
+        //ask the neural network if it likes the boards
+        int noOfOutputs = scoreInputs(noOfEmptyFields, noOfInputs);
+        
+        double bestResult = Double.NEGATIVE_INFINITY;
+        int bestField = -1;
+        
+        //find the best result
+        for (int field = 0; field < noOfEmptyFields; field++) {
+            float result = outputs[field * noOfOutputs];
+            if (result > bestResult) {
+                bestResult = result;
                 bestField = emptyFields[field];
             }
         }
@@ -75,26 +143,42 @@ public class PlayerNeuralNetwork implements Player{
         return bestField;
     }
     
+    /**
+     * Runs the network on the first count inputs.
+     * 
+     * @param count Number of inputs
+     * @param noOfInputs Size of a single input
+     * @return Size of a single output
+     */
+    private int scoreInputs(int count, int noOfInputs) {
+        if (network != null) {
+            network.run(inputs, count, outputs);
+            return network.getNoOfOutputs();
+        }
+        
+        //libfann takes one input at a time
+        float[] input = new float[noOfInputs];
+        for (int k = 0; k < count; k++) {
+            System.arraycopy(inputs, k * noOfInputs, input, 0, noOfInputs);
+            outputs[k] = nnFan.run(input)[0];
+        }
+        return 1;
+    }
+    
     /**
      * Transforms the board to neural network input.
      * 
      * @param b Board
      * @param player Which player is neural network, one or two
-     * @return Neural network input
+     * @param result Array the input is written to, starting at 0
      */
-    private static float[] transformBoardToNNInput(Board b, byte player) {
-        float[] result = new float[b.getSize() * b.getSize()];
-        
+    private static void transformBoardToNNInput(Board b, byte player, 
+            float[] result) {
         //copy matrix to result and apply transformations
-        for (int row = 0; row < b.getSize(); row++) {
-            for (int col = 0; col < b.getSize(); col++) {
-                Coordinate c = new Coordinate(row, col);
-                result[row * b.getSize() + col] = 
-                        (float)(b.getFieldMark(c) + f(player, (byte) b.getFieldMark(c)));
-            }
-        }        
-        
-        return result;
+        for (int i = 0; i < b.getSize() * b.getSize(); i++) {
+            byte mark = b.getFieldMark(i);
+            result[i] = (float)(mark + f(player, mark));
+        }
     }
     
     /**
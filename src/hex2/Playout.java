@@ -0,0 +1,542 @@
+package hex2;
+
+/**
+ * Playout kernel used by MonteCarlo. It loads a position once, and then runs
+ * random playouts on it using only preallocated primitive buffers and flat
+ * field indices (row * size + col), so a playout doesn't allocate anything.
+ *
+ * A playout fills all of the empty fields at random, with the right number of
+ * fields for each of the players, and checks if the first player connected
+ * the top and the bottom row. Since only the first player's fields are needed
+ * for that, a playout picks which of the remaining fields belong to the first
+ * player by a partial shuffle of the remaining fields, and then sets their
+ * bits on a copy of the first player's bitboard.
+ *
+ * In the incremental mode stones are instead placed one at a time, in random
+ * order and taking turns, into a union-find with four added nodes for the
+ * edges (like in Game). The playout stops as soon as the player who just
+ * moved connected the edges, and the union-find is reset to the loaded
+ * position in time proportional to the number of fields touched. Both modes
+ * give the same distribution of winners.
+ *
+ * With the bridge policy on, the fields are also played in random order,
+ * taking turns, but when a move intrudes into a bridge of the player who
+ * moves next (two of the player's stones that share two empty neighbors, so
+ * that the player can always connect them), that player answers with the
+ * other shared neighbor and saves the bridge. A stone on the second row from
+ * one of the player's edges counts as bridged to the edge in the same way.
+ * The neighbors of every field and the bridges come from the BoardGeometry
+ * of the board size. It works in both modes.
+ *
+ * A Playout is not thread safe, every thread should use its own.
+ *
+ * @author Ljubo Raicevic <rljubo90@gmail.com>
+ */
+public final class Playout {
+
+    /**
+     * Board side size.
+     */
+    private final int size;
+
+    /**
+     * Checks who won on the filled bitboard.
+     */
+    private final WinDetector detector;
+
+    /**
+     * Random number generator used for filling the board.
+     */
+    private final RandomSource random;
+
+    /**
+     * First player's fields in the loaded position.
+     */
+    private final long[] baseVertical;
+
+    /**
+     * First player's fields in the current playout.
+     */
+    private final long[] vertical;
+
+    /**
+     * First player's fields after the moves played before the playout.
+     */
+    private final long[] start;
+
+    /**
+     * All of the fields that are filled in by a playout, and the mask of
+     * those fields.
+     */
+    private final int[] rest;
+    private final long[] restMask;
+    private int noOfRest;
+
+    /**
+     * How many of the rest of the fields are chosen at random, and do they
+     * become the first player's (or the second player's) fields.
+     */
+    private int picks;
+    private boolean pickOnes;
+
+    /**
+     * Buffer for the single move played by simulate.
+     */
+    private final int[] single = new int[1];
+
+    /**
+     * Are stones placed one at a time, stopping as soon as someone wins.
+     */
+    private boolean incremental;
+
+    /**
+     * Are intrusions into bridges answered.
+     */
+    private boolean bridgePolicy;
+
+    /**
+     * Neighbors of every field, see BoardGeometry.
+     */
+    private final int[] neighbors;
+
+    /**
+     * Position of every field in rest, used by the bridge policy.
+     */
+    private final int[] restPosition;
+
+    /**
+     * Union-find of the loaded position, with the added nodes for the edges:
+     * top (size^2), bottom (size^2 + 1), left (size^2 + 2) and right
+     * (size^2 + 3).
+     */
+    private final ResettableUF unionFind;
+
+    /**
+     * Marks of the fields, and the fields marked by the current playout. The
+     * four places after the last field are the edges (see BoardGeometry),
+     * marked with the player they belong to, so a field is connected to its
+     * edges and bridged to them like to any other neighbor.
+     */
+    private final byte[] marks;
+    private final int[] placed;
+    private int noOfPlaced;
+
+    /**
+     * Player who already won in the loaded position, 0 if nobody did.
+     */
+    private byte loadedWinner;
+
+    /**
+     * Empty fields of the loaded position.
+     */
+    private final int[] emptyFields;
+    private int noOfEmptyFields;
+
+    /**
+     * Player who has the next move in the loaded position.
+     */
+    private byte player;
+
+    /**
+     * Initializes a playout kernel for boards of the given size.
+     *
+     * @param size Board size
+     * @param random Random number generator used for filling the board
+     */
+    public Playout(int size, RandomSource random) {
+        int words = Board.wordsFor(size);
+        this.size = size;
+        this.detector = new WinDetector(size);
+        this.random = random;
+        this.baseVertical = new long[words];
+        this.vertical = new long[words];
+        this.start = new long[words];
+        this.restMask = new long[words];
+        this.rest = new int[size * size];
+        this.emptyFields = new int[size * size];
+        this.unionFind = new ResettableUF(size * size + 4);
+        this.marks = new byte[size * size + 4];
+        this.placed = new int[size * size];
+        this.neighbors = BoardGeometry.forSize(size).getNeighbors();
+        this.restPosition = new int[size * size];
+    }
+
+    /**
+     * Chooses between filling the board and checking it (the default), and
+     * placing stones one at a time and stopping as soon as someone wins.
+     *
+     * @param incremental true for the incremental mode
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Turns answering intrusions into bridges on or off. Off by default.
+     *
+     * @param bridgePolicy true to save bridges
+     */
+    public void setBridgePolicy(boolean bridgePolicy) {
+        this.bridgePolicy = bridgePolicy;
+    }
+
+    public boolean isBridgePolicy() {
+        return bridgePolicy;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Loads the position from the board.
+     *
+     * @param b Board of the same size as this kernel
+     */
+    public void load(Board b) {
+        if (b.getSize() != size) {
+            throw new IllegalArgumentException("Board size doesn't match.");
+        }
+
+        long[] v = b.getVerticalBits();
+        long[] h = b.getHorizontalBits();
+        int fields = size * size;
+
+        for (int w = 0; w < v.length; w++) {
+            baseVertical[w] = v[w] & ~h[w];
+        }
+        noOfEmptyFields = b.getNoOfEmptyFields();
+        System.arraycopy(b.getEmptyFieldIndices(), 0, emptyFields, 0, noOfEmptyFields);
+
+        player = b.whosOnTheMove();
+
+        //the loaded position in the union-find
+        unionFind.clear();
+        loadedWinner = 0;
+        noOfPlaced = 0;
+        for (int i = 0; i < fields; i++) {
+            long bit = 1L << i;
+            marks[i] = (byte) (((v[i >>> 6] & bit) != 0 ? 1 : 0)
+                    | ((h[i >>> 6] & bit) != 0 ? 2 : 0));
+        }
+        for (int edge = BoardGeometry.TOP; edge <= BoardGeometry.RIGHT; edge++) {
+            marks[fields + edge] = BoardGeometry.getEdgeOwner(edge);
+        }
+        for (int i = 0; i < fields; i++) {
+            if ((marks[i] == 1 || marks[i] == 2) && connect(i, marks[i])) {
+                loadedWinner = marks[i];
+            }
+        }
+        unionFind.save();
+    }
+
+    public int getNoOfEmptyFields() {
+        return noOfEmptyFields;
+    }
+
+    /**
+     * Returns the index of an empty field of the loaded position.
+     *
+     * @param k Between 0 and getNoOfEmptyFields() - 1
+     * @return Index of the field, row * size + col
+     */
+    public int getEmptyField(int k) {
+        return emptyFields[k];
+    }
+
+    /**
+     * Player who has the next move in the loaded position.
+     * 
+     * @return 1 or 2
+     */
+    public byte whosOnTheMove() {
+        return player;
+    }
+
+    /**
+     * Marks the field as the player's on the move and runs playouts on the
+     * rest of the empty fields.
+     *
+     * @param field Index of an empty field, row * size + col
+     * @param repetitions Number of playouts
+     * @return In how many playouts the player on the move won
+     */
+    public int simulate(int field, int repetitions) {
+        single[0] = field;
+        prepare(single, 1);
+
+        int wins = 0;
+        for (int repetition = 0; repetition < repetitions; repetition++) {
+            boolean verticalWon = incremental ? placeAndCheck(single, 1)
+                    : bridgePolicy ? fillInOrderAndCheck(single, 1) 
+                    : fillAndCheck();
+            if (verticalWon == (player == 1)) {
+                wins++;
+            }
+        }
+
+        return wins;
+    }
+
+    /**
+     * Plays the moves, starting with the player on the move and then taking
+     * turns, and runs one playout on the rest of the empty fields.
+     *
+     * @param moves Indices of empty fields, row * size + col
+     * @param noOfMoves How many of the moves should be played
+     * @return Player who won the playout, 1 or 2
+     */
+    public byte playout(int[] moves, int noOfMoves) {
+        prepare(moves, noOfMoves);
+        boolean verticalWon = incremental ? placeAndCheck(moves, noOfMoves)
+                : bridgePolicy ? fillInOrderAndCheck(moves, noOfMoves) 
+                : fillAndCheck();
+        return verticalWon ? (byte) 1 : (byte) 2;
+    }
+
+    /**
+     * Plays the moves on the first player's bitboard and collects the fields
+     * that are going to be filled in by playouts.
+     *
+     * @param moves Indices of empty fields, row * size + col
+     * @param noOfMoves How many of the moves should be played
+     */
+    private void prepare(int[] moves, int noOfMoves) {
+        for (int w = 0; w < restMask.length; w++) {
+            start[w] = baseVertical[w];
+            restMask[w] = 0;
+        }
+
+        //moves take turns, starting with the player on the move
+        for (int k = 0; k < noOfMoves; k++) {
+            int i = moves[k];
+            restMask[i >>> 6] |= 1L << i;
+            if ((k % 2 == 0) == (player == 1)) {
+                start[i >>> 6] |= 1L << i;
+            }
+        }
+
+        //collect the fields that are going to be filled in
+        noOfRest = 0;
+        for (int k = 0; k < noOfEmptyFields; k++) {
+            int i = emptyFields[k];
+            if ((restMask[i >>> 6] & (1L << i)) == 0) {
+                rest[noOfRest++] = i;
+            }
+        }
+        for (int w = 0; w < restMask.length; w++) {
+            restMask[w] = 0;
+        }
+        for (int k = 0; k < noOfRest; k++) {
+            restMask[rest[k] >>> 6] |= 1L << rest[k];
+        }
+
+        //the player on the move after the moves gets the extra field
+        boolean firstOnTheMove = (noOfMoves % 2 == 0) == (player == 1);
+        int ones = firstOnTheMove ? (noOfRest + 1) / 2 : noOfRest / 2;
+        //pick the smaller of the two groups at random
+        pickOnes = ones <= noOfRest - ones;
+        picks = pickOnes ? ones : noOfRest - ones;
+    }
+
+    /**
+     * Fills in the rest of the fields at random.
+     *
+     * @return true if the first player connected the top and the bottom row
+     */
+    private boolean fillAndCheck() {
+        //partial shuffle, the first picks fields are chosen
+        for (int k = 0; k < picks; k++) {
+            int r = k + random.nextInt(noOfRest - k);
+            int swap = rest[r];
+            rest[r] = rest[k];
+            rest[k] = swap;
+        }
+
+        for (int w = 0; w < vertical.length; w++) {
+            vertical[w] = pickOnes ? start[w] : start[w] | restMask[w];
+        }
+        for (int k = 0; k < picks; k++) {
+            //toggles the bit: sets it for ones, clears it for twos
+            vertical[rest[k] >>> 6] ^= 1L << rest[k];
+        }
+
+        return detector.isVerticalConnected(vertical);
+    }
+
+    /**
+     * Fills in the rest of the fields in random order, taking turns and
+     * answering intrusions into bridges, and checks the filled board.
+     * Afterwards the marks are returned to the loaded position.
+     *
+     * @param moves Moves played before the random ones
+     * @param noOfMoves How many of the moves should be played
+     * @return true if the first player connected the top and the bottom row
+     */
+    private boolean fillInOrderAndCheck(int[] moves, int noOfMoves) {
+        byte mark = player;
+        for (int k = 0; k < noOfMoves; k++) {
+            marks[moves[k]] = mark;
+            placed[noOfPlaced++] = moves[k];
+            mark = Board.calculateNextPlayer(mark);
+        }
+        for (int k = 0; k < noOfRest; k++) {
+            restPosition[rest[k]] = k;
+        }
+
+        System.arraycopy(start, 0, vertical, 0, vertical.length);
+        int last = noOfMoves > 0 ? moves[noOfMoves - 1] : -1;
+        for (int k = 0; k < noOfRest; k++) {
+            int field = nextField(k, last, mark);
+            marks[field] = mark;
+            placed[noOfPlaced++] = field;
+            if (mark == 1) {
+                vertical[field >>> 6] |= 1L << field;
+            }
+            last = field;
+            mark = Board.calculateNextPlayer(mark);
+        }
+
+        for (int k = 0; k < noOfPlaced; k++) {
+            marks[placed[k]] = 0;
+        }
+        noOfPlaced = 0;
+
+        return detector.isVerticalConnected(vertical);
+    }
+
+    /**
+     * Chooses the k-th field of the playout and moves it to rest[k]: the
+     * answer to the last move if it intruded into a bridge of the player on
+     * the move, a random field from the rest otherwise.
+     *
+     * @param k Number of fields already chosen
+     * @param last Last move, -1 if there wasn't one
+     * @param mark Player on the move
+     * @return Chosen field
+     */
+    private int nextField(int k, int last, byte mark) {
+        int r = -1;
+        if (bridgePolicy && last >= 0) {
+            int answer = bridgeAnswer(last, mark);
+            if (answer >= 0) { r = restPosition[answer]; }
+        }
+        if (r < 0) {
+            r = k + random.nextInt(noOfRest - k);
+        }
+
+        //one step of the shuffle
+        int field = rest[r];
+        rest[r] = rest[k];
+        rest[k] = field;
+        if (bridgePolicy) {
+            restPosition[rest[r]] = r;
+            restPosition[field] = k;
+        }
+        return field;
+    }
+
+    /**
+     * Finds the answer to a move that intruded into one of the player's
+     * bridges.
+     *
+     * @param intrusion Opponent's move
+     * @param mark Player whose bridges are looked at
+     * @return The empty field that saves the bridge, -1 if there's none
+     */
+    private int bridgeAnswer(int intrusion, byte mark) {
+        int entry = intrusion * 6;
+        int owned = 0;
+        int empty = 0;
+        for (int d = 0; d < 6; d++) {
+            byte m = marks[neighbors[entry + d]];
+            owned |= (m == mark ? 1 : 0) << d;
+            empty |= (m == 0 ? 1 : 0) << d;
+        }
+
+        int answers = BoardGeometry.getBridges(owned) & empty;
+        return answers == 0 ? -1
+                : neighbors[entry + Integer.numberOfTrailingZeros(answers)];
+    }
+
+    /**
+     * Places the moves and then the rest of the fields in random order,
+     * taking turns, until someone wins. Afterwards the union-find and the
+     * marks are returned to the loaded position.
+     *
+     * @param moves Moves played before the random ones
+     * @param noOfMoves How many of the moves should be played
+     * @return true if the first player connected the top and the bottom row
+     */
+    private boolean placeAndCheck(int[] moves, int noOfMoves) {
+        byte winner = loadedWinner;
+        byte mark = player;
+
+        for (int k = 0; k < noOfMoves && winner == 0; k++) {
+            if (place(moves[k], mark)) { winner = mark; }
+            mark = Board.calculateNextPlayer(mark);
+        }
+        if (bridgePolicy) {
+            for (int k = 0; k < noOfRest; k++) {
+                restPosition[rest[k]] = k;
+            }
+        }
+        int last = noOfMoves > 0 ? moves[noOfMoves - 1] : -1;
+        for (int k = 0; k < noOfRest && winner == 0; k++) {
+            int field = nextField(k, last, mark);
+            if (place(field, mark)) { winner = mark; }
+            last = field;
+            mark = Board.calculateNextPlayer(mark);
+        }
+
+        unionFind.reset();
+        for (int k = 0; k < noOfPlaced; k++) {
+            marks[placed[k]] = 0;
+        }
+        noOfPlaced = 0;
+
+        return winner == 1;
+    }
+
+    /**
+     * Marks the field and connects it in the union-find.
+     *
+     * @param field Empty field
+     * @param mark 1 or 2
+     * @return true if the player connected the edges with this move
+     */
+    private boolean place(int field, byte mark) {
+        marks[field] = mark;
+        placed[noOfPlaced++] = field;
+        return connect(field, mark);
+    }
+
+    /**
+     * Connects the field to its neighbors of the same color and to the
+     * player's edges.
+     *
+     * @param field Marked field
+     * @param mark Mark of the field, 1 or 2
+     * @return true if the player's edges are connected
+     */
+    private boolean connect(int field, byte mark) {
+        int entry = field * 6;
+        int fields = size * size;
+
+        //the edges are marked too, so they're connected in the same loop
+        for (int d = 0; d < 6; d++) {
+            int neighbor = neighbors[entry + d];
+            if (marks[neighbor] == mark) {
+                unionFind.union(field, neighbor);
+            }
+        }
+
+        return mark == 1
+                ? unionFind.connected(fields + BoardGeometry.TOP, fields + BoardGeometry.BOTTOM)
+                : unionFind.connected(fields + BoardGeometry.LEFT, fields + BoardGeometry.RIGHT);
+    }
+}
@@ -0,0 +1,382 @@
+package hex2;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Cache of evaluated positions, so that positions which come up again (the
+ * openings of every game, for example) don't have to be evaluated again. It
+ * keeps the moves ranked by MonteCarlo.evaluateBoard and the number of
+ * repetitions they were computed with, and is looked up by the Zobrist hash
+ * of the board mixed with the board size (an empty board hashes to 0 at every
+ * size). The size and the fields of the board are stored with every entry
+ * too, so two positions with the same hash can't be mixed up, and a cache
+ * can be shared between players of different board sizes.
+ *
+ * Positions are stored in their canonical form (see BoardSymmetry), with the
+ * moves moved along, so a position that's equivalent to a cached one (turned
+ * by 180 degrees, or transposed with the players swapped) is a hit too.
+ *
+ * The cache holds at most the given number of positions. When it's full,
+ * LRU removes the position that was used the longest time ago. DEPTH_PREFERRED
+ * works like a transposition table: every position has a single slot, given
+ * by its hash, and a new position replaces the one in its slot only if it
+ * took at least as many simulations to evaluate (repetitions times the number
+ * of moves), so the expensive positions near the beginning of the game stay.
+ *
+ * A PositionCache is thread safe and can be shared between players.
+ *
+ * @author Ljubo Raicevic <rljubo90@gmail.com>
+ */
+public class PositionCache {
+
+    /**
+     * How positions are removed when the cache is full.
+     */
+    public enum Replacement { LRU, DEPTH_PREFERRED }
+
+    /**
+     * Estimated size of an entry without its moves, and of a single move
+     * (its field, wins, simulations and probability in the MoveRanking).
+     */
+    private static final int ENTRY_BYTES = 224;
+    private static final int MOVE_BYTES = 20;
+
+    /**
+     * Multiplied by the board size and mixed into the hash.
+     */
+    private static final long SIZE_KEY = 0x9E3779B97F4A7C15L;
+
+    private final Replacement replacement;
+    private final int capacity;
+
+    /**
+     * Entries for LRU, null for DEPTH_PREFERRED.
+     */
+    private final LinkedHashMap<Long, Entry> lru;
+
+    /**
+     * Slots for DEPTH_PREFERRED, null for LRU.
+     */
+    private final AtomicReferenceArray<Entry> slots;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong entries = new AtomicLong();
+
+    /**
+     * Initializes an empty cache.
+     *
+     * @param capacity Maximum number of positions; for DEPTH_PREFERRED it's
+     * rounded up to a power of two
+     * @param replacement How positions are removed when the cache is full
+     */
+    public PositionCache(int capacity, Replacement replacement) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        this.replacement = replacement;
+
+        if (replacement == Replacement.LRU) {
+            this.capacity = capacity;
+            this.slots = null;
+            this.lru = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<Long, PositionCache.Entry> eldest) {
+                    if (size() > PositionCache.this.capacity) {
+                        removed(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        } else {
+            int noOfSlots = 1;
+            while (noOfSlots < capacity && noOfSlots < 1 << 30) {
+                noOfSlots <<= 1;
+            }
+            this.capacity = noOfSlots;
+            this.slots = new AtomicReferenceArray<>(this.capacity);
+            this.lru = null;
+        }
+    }
+
+    public Replacement getReplacement() {
+        return replacement;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Looks the position up.
+     *
+     * @param b Board
+     * @param repetitions Repetitions the moves should be computed with
+     * @return The cached evaluation if the position is cached with at least
+     * as many repetitions, null otherwise
+     */
+    public Evaluation get(Board b, int repetitions) {
+        BoardSymmetry symmetry = BoardSymmetry.canonical(b);
+        Entry entry = find(canonicalBoard(b, symmetry));
+        if (entry == null || entry.repetitions < repetitions) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return new Evaluation(mapRanking(entry.ranking, symmetry.inverse()), 
+                entry.repetitions);
+    }
+
+    /**
+     * Adds the position. If it's already cached with more repetitions,
+     * nothing changes.
+     *
+     * @param b Board
+     * @param repetitions Repetitions the moves were computed with
+     * @param ranking Moves ranked by MonteCarlo.rankBoard
+     */
+    public void put(Board b, int repetitions, MoveRanking ranking) {
+        BoardSymmetry symmetry = BoardSymmetry.canonical(b);
+        b = canonicalBoard(b, symmetry);
+        Entry entry = new Entry(b, repetitions, mapRanking(ranking, symmetry));
+
+        if (lru != null) {
+            synchronized (lru) {
+                Entry old = lru.get(entry.hash);
+                if (old != null && old.matches(b) && old.repetitions > repetitions) {
+                    return;
+                }
+                added(entry);
+                old = lru.put(entry.hash, entry);
+                if (old != null) { removed(old); }
+            }
+            return;
+        }
+
+        int slot = (int) entry.hash & (capacity - 1);
+        while (true) {
+            Entry old = slots.get(slot);
+            if (old != null) {
+                //the same position is replaced unless it had more repetitions,
+                //another one only if it took less work
+                if (old.matches(b) ? old.repetitions > repetitions 
+                        : old.work() > entry.work()) {
+                    return;
+                }
+            }
+            if (slots.compareAndSet(slot, old, entry)) {
+                added(entry);
+                if (old != null) { removed(old); }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes all of the positions. The statistics are kept.
+     */
+    public void clear() {
+        if (lru != null) {
+            synchronized (lru) {
+                lru.clear();
+                entries.set(0);
+                bytes.set(0);
+            }
+        } else {
+            for (int slot = 0; slot < capacity; slot++) {
+                Entry old = slots.getAndSet(slot, null);
+                if (old != null) { removed(old); }
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Hits divided by lookups.
+     *
+     * @return Hit rate, 0 if there were no lookups
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long lookups = h + misses.get();
+        return lookups == 0 ? 0 : (double) h / lookups;
+    }
+
+    /**
+     * Number of cached positions.
+     *
+     * @return Number of positions
+     */
+    public long size() {
+        return entries.get();
+    }
+
+    /**
+     * Estimated memory used by the cached positions.
+     *
+     * @return Bytes
+     */
+    public long getMemoryUsage() {
+        return bytes.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s cache: %d positions, %.1f%% hits, %d KB",
+                replacement, size(), getHitRate() * 100, getMemoryUsage() >> 10);
+    }
+
+    private Entry find(Board b) {
+        long hash = key(b);
+        Entry entry;
+        if (lru != null) {
+            synchronized (lru) {
+                entry = lru.get(hash);
+            }
+        } else {
+            entry = slots.get((int) hash & (capacity - 1));
+        }
+        return entry != null && entry.hash == hash && entry.matches(b) ? entry : null;
+    }
+
+    /**
+     * The board in its canonical form. When that's the board itself, the
+     * board is used as it is, since it's only read (and an Entry copies its
+     * bitboards), so looking it up doesn't copy or change it.
+     *
+     * @param b Board
+     * @param symmetry Canonical symmetry of the board
+     * @return b, or a new board with the symmetry applied to b
+     */
+    private static Board canonicalBoard(Board b, BoardSymmetry symmetry) {
+        return symmetry == BoardSymmetry.IDENTITY ? b : symmetry.apply(b);
+    }
+
+    /**
+     * Key of the position, its Zobrist hash mixed with the board size.
+     *
+     * @param b Board
+     * @return Key
+     */
+    private static long key(Board b) {
+        return b.getZobristHash() ^ b.getSize() * SIZE_KEY;
+    }
+
+    /**
+     * Applies the symmetry to the fields of the ranking.
+     *
+     * @param ranking Ranked moves
+     * @param symmetry Symmetry
+     * @return New ranking of the same moves, so that the cached one is never
+     * used by two threads
+     */
+    private static MoveRanking mapRanking(MoveRanking ranking,
+            BoardSymmetry symmetry) {
+        return symmetry == BoardSymmetry.IDENTITY 
+                ? ranking.copy() : ranking.map(symmetry);
+    }
+
+    private void added(Entry entry) {
+        entries.incrementAndGet();
+        bytes.addAndGet(entry.bytes());
+    }
+
+    private void removed(Entry entry) {
+        entries.decrementAndGet();
+        bytes.addAndGet(-entry.bytes());
+    }
+
+    /**
+     * Moves of a cached position, ranked by MonteCarlo.evaluateBoard, and the
+     * repetitions they were computed with.
+     */
+    public static final class Evaluation {
+        private final MoveRanking ranking;
+        private final int repetitions;
+
+        private Evaluation(MoveRanking ranking, int repetitions) {
+            this.ranking = ranking;
+            this.repetitions = repetitions;
+        }
+
+        /**
+         * Ranked moves, a ranking of their own that isn't shared with the
+         * cache.
+         *
+         * @return Ranked moves
+         */
+        public MoveRanking getRanking() {
+            return ranking;
+        }
+
+        /**
+         * Ranked moves as an array, made on every call.
+         *
+         * @return Ranked moves
+         */
+        public MCSimulationMove[] getMoves() {
+            return ranking.toMoves();
+        }
+
+        public int getRepetitions() {
+            return repetitions;
+        }
+    }
+
+    /**
+     * A cached position. Never changed after it's made.
+     */
+    private static final class Entry {
+        final long hash;
+        final int size;
+        final long[] vertical;
+        final long[] horizontal;
+        final byte player;
+        final int repetitions;
+        final MoveRanking ranking;
+
+        Entry(Board b, int repetitions, MoveRanking ranking) {
+            this.hash = key(b);
+            this.size = b.getSize();
+            this.vertical = b.getVerticalBits().clone();
+            this.horizontal = b.getHorizontalBits().clone();
+            this.player = b.whosOnTheMove();
+            this.repetitions = repetitions;
+            this.ranking = ranking;
+        }
+
+        boolean matches(Board b) {
+            long[] v = b.getVerticalBits();
+            long[] h = b.getHorizontalBits();
+            if (size != b.getSize() || player != b.whosOnTheMove()) {
+                return false;
+            }
+            for (int w = 0; w < v.length; w++) {
+                if (v[w] != vertical[w] || h[w] != horizontal[w]) { return false; }
+            }
+            return true;
+        }
+
+        long work() {
+            return (long) repetitions * ranking.getNoOfMoves();
+        }
+
+        long bytes() {
+            return ENTRY_BYTES + 16L * vertical.length 
+                    + (long) MOVE_BYTES * ranking.getNoOfMoves();
+        }
+    }
+}
@@ -13,15 +13,27 @@ public class RandomBoardGenerator {
      * @return 
      */
     public static Board makeUpARandomBoard(int boardSize) {
+        return makeUpARandomBoard(boardSize, Xoshiro256.current());
+    }
+    
+    /**
+     * Makes a random board using the given source of random numbers, and the
+     * number of moves played is also random.
+     * 
+     * @param boardSize
+     * @param random Source of random numbers
+     * @return 
+     */
+    public static Board makeUpARandomBoard(int boardSize, RandomSource random) {
         int n = boardSize * boardSize;
         //for now, movesPlayed has to be even
         int movesPlayed = 1;
         while (movesPlayed % 2 != 0) {
-            movesPlayed = (int) Math.ceil(Math.random() * n);
+            movesPlayed = random.nextInt(n) + 1;
         }
-        return makeRandomBoard(movesPlayed, boardSize);
+        return makeRandomBoard(movesPlayed, boardSize, random);
 //        int n = boardSize * boardSize;
-//        return makeRandomBoard(getRandomMovesPlayed(), boardSize);
+//        return makeRandomBoard(getRandomMovesPlayed(random), boardSize);
     }
     
     /**
@@ -33,10 +45,25 @@ public class RandomBoardGenerator {
      * @return 
      */
     public static Board makeRandomBoard(int movesPlayed, int boardSize) {
+        return makeRandomBoard(movesPlayed, boardSize, Xoshiro256.current());
+    }
+    
+    /**
+     * Makes a random board using the given source of random numbers, when 
+     * given movesPlayed and boardSize.
+     * 
+     * @param movesPlayed
+     * @param boardSize
+     * @param random Source of random numbers
+     * @return 
+     */
+    public static Board makeRandomBoard(int movesPlayed, int boardSize, 
+            RandomSource random) {
         Board b = null;
 //        boolean boardNotWon = false;
 //        while (!boardNotWon) {
-            byte[] sequence = getRandomSequence(movesPlayed, boardSize * boardSize);
+            byte[] sequence = getRandomSequence(movesPlayed, boardSize * boardSize, 
+                    random);
             b = new Board(boardSize, sequence, movesPlayed);
 //            if (!MonteCarlo.didPlayerWin(b, (byte)1)
 //                    && !MonteCarlo.didPlayerWin(b, (byte)2)) {
@@ -50,10 +77,11 @@ public class RandomBoardGenerator {
      * Random number of moves played can't be uniformly distributed, since there
      * are more combinations for moves later in the game.
      * 
+     * @param source Source of random numbers
      * @return 
      */
-    private static int getRandomMovesPlayed() {
-        int random = (int) Math.ceil(Math.random() * 362880); // 362880 = 9!
+    private static int getRandomMovesPlayed(RandomSource source) {
+        int random = source.nextInt(362880) + 1; // 362880 = 9!
         if      (random <= 9)      { return 0; }
         else if (random <= 504)    { return 2; }
         else if (random <= 15120)  { return 4; }
@@ -66,11 +94,13 @@ public class RandomBoardGenerator {
      * 
      * @param movesPlayed
      * @param boardLength
+     * @param random Source of random numbers
      * @return 
      */
-    private static byte[] getRandomSequence(int movesPlayed, int boardLength) {
+    private static byte[] getRandomSequence(int movesPlayed, int boardLength,
+            RandomSource random) {
         byte[] result = getSequence(movesPlayed, boardLength);
-        MonteCarlo.shuffleArray(result);
+        MonteCarlo.shuffleArray(result, random);
         return result;
     }
     
@@ -0,0 +1,56 @@
+package hex2;
+
+/**
+ * Source of random numbers used by MonteCarlo, Playout and
+ * RandomBoardGenerator. Unlike Math.random, a RandomSource is not shared
+ * between threads, so it doesn't need any synchronization. It is not thread
+ * safe, every thread should use its own (see split and Xoshiro256.current).
+ * 
+ * @author Ljubo Raicevic <rljubo90@gmail.com>
+ */
+public interface RandomSource {
+    
+    /**
+     * Returns the next 64 random bits.
+     * 
+     * @return Random long
+     */
+    long nextLong();
+    
+    /**
+     * Returns a new RandomSource whose sequence doesn't overlap with the rest
+     * of this one's. Splitting a source created from the same seed always
+     * gives the same sources, so they can be handed out to workers without
+     * losing reproducibility.
+     * 
+     * @return New RandomSource
+     */
+    RandomSource split();
+    
+    /**
+     * Returns a uniformly distributed int in [0, bound). Uses a multiplication
+     * and a shift instead of a floating point multiplication or a division
+     * (Lemire's method), the rare biased results are rejected.
+     * 
+     * @param bound Upper bound (exclusive), has to be positive
+     * @return Random int in [0, bound)
+     */
+    default int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive.");
+        }
+        
+        long m = (nextLong() >>> 32) * bound;
+        long low = m & 0xFFFFFFFFL;
+        if (low < bound) {
+            //2^32 mod bound
+            long threshold = (0x100000000L - bound) % bound;
+            while (low < threshold) {
+                m = (nextLong() >>> 32) * bound;
+                low = m & 0xFFFFFFFFL;
+            }
+        }
+        
+        return (int) (m >>> 32);
+    }
+}
@@ -0,0 +1,146 @@
+package hex2;
+
+/**
+ * The <tt>ResettableUF</tt> class is a version of {@link UF} that can be
+ * reset to a saved state without being reallocated. It is used by playouts,
+ * which add the same stones to the same starting position over and over.
+ * <p>
+ * Like UF, it uses weighted quick union by rank with path compression by
+ * halving. Every site whose parent or rank changes after the last
+ * <em>save</em> is written down (once), and <em>reset</em> restores only
+ * those sites, so it takes time proportional to the number of sites touched
+ * since the last save, not to <em>N</em>.
+ *
+ * @author Ljubo Raicevic <rljubo90@gmail.com>
+ */
+public class ResettableUF {
+    private final int[] id;        // id[i] = parent of i
+    private final byte[] rank;     // rank[i] = rank of subtree rooted at i
+    private final int[] savedId;   // id[i] at the time of the last save
+    private final byte[] savedRank;
+    private final int[] touched;   // sites changed since the last save
+    private final boolean[] isTouched;
+    private int noOfTouched;
+
+    /**
+     * Initializes an empty union-find data structure with <tt>N</tt>
+     * isolated components <tt>0</tt> through <tt>N-1</tt>. This is the saved
+     * state until save is called.
+     * @throws java.lang.IllegalArgumentException if <tt>N &lt; 0</tt>
+     * @param N the number of sites
+     */
+    public ResettableUF(int N) {
+        if (N < 0) throw new IllegalArgumentException();
+        id = new int[N];
+        rank = new byte[N];
+        savedId = new int[N];
+        savedRank = new byte[N];
+        touched = new int[N];
+        isTouched = new boolean[N];
+        for (int i = 0; i < N; i++) {
+            id[i] = i;
+            savedId[i] = i;
+        }
+    }
+
+    /**
+     * Returns the component identifier for the component containing site <tt>p</tt>.
+     * @param p the integer representing one object
+     * @return the component identifier for the component containing site <tt>p</tt>
+     */
+    public int find(int p) {
+        while (p != id[p]) {
+            int grandparent = id[id[p]];
+            if (grandparent != id[p]) {
+                touch(p);
+                id[p] = grandparent;    // path compression by halving
+            }
+            p = grandparent;
+        }
+        return p;
+    }
+
+    /**
+     * Are the two sites <tt>p</tt> and <tt>q</tt> in the same component?
+     * @param p the integer representing one site
+     * @param q the integer representing the other site
+     * @return true if the two sites <tt>p</tt> and <tt>q</tt> are in the same component; false otherwise
+     */
+    public boolean connected(int p, int q) {
+        return find(p) == find(q);
+    }
+
+    /**
+     * Merges the component containing site <tt>p</tt> with the
+     * the component containing site <tt>q</tt>.
+     * @param p the integer representing one site
+     * @param q the integer representing the other site
+     */
+    public void union(int p, int q) {
+        int i = find(p);
+        int j = find(q);
+        if (i == j) return;
+
+        // make root of smaller rank point to root of larger rank
+        if      (rank[i] < rank[j]) { touch(i); id[i] = j; }
+        else if (rank[i] > rank[j]) { touch(j); id[j] = i; }
+        else {
+            touch(i);
+            touch(j);
+            id[j] = i;
+            rank[i]++;
+        }
+    }
+
+    /**
+     * Makes the current state the one that reset returns to. Takes time
+     * proportional to the number of sites touched since the last save.
+     */
+    public void save() {
+        for (int k = 0; k < noOfTouched; k++) {
+            int p = touched[k];
+            savedId[p] = id[p];
+            savedRank[p] = rank[p];
+            isTouched[p] = false;
+        }
+        noOfTouched = 0;
+    }
+
+    /**
+     * Returns to the state at the time of the last save. Takes time
+     * proportional to the number of sites touched since then.
+     */
+    public void reset() {
+        for (int k = 0; k < noOfTouched; k++) {
+            int p = touched[k];
+            id[p] = savedId[p];
+            rank[p] = savedRank[p];
+            isTouched[p] = false;
+        }
+        noOfTouched = 0;
+    }
+
+    /**
+     * Returns to N isolated components and makes that the saved state.
+     */
+    public void clear() {
+        for (int i = 0; i < id.length; i++) {
+            id[i] = i;
+            rank[i] = 0;
+            savedId[i] = i;
+            savedRank[i] = 0;
+            isTouched[i] = false;
+        }
+        noOfTouched = 0;
+    }
+
+    /**
+     * Writes down that the site is about to change.
+     */
+    private void touch(int p) {
+        if (!isTouched[p]) {
+            isTouched[p] = true;
+            touched[noOfTouched++] = p;
+        }
+    }
+}
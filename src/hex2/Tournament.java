@@ -0,0 +1,474 @@
+package hex2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Round-robin tournament between several players, with the games played on
+ * a pool of threads at once.
+ *
+ * Players are given as factories, and every game gets new players from
+ * them, so players that keep something between moves (PlayerMCTS keeps its
+ * tree, for example) can't mix up games that run at the same time. Players
+ * that are AutoCloseable (a multi-threaded PlayerMonteCarlo, which has its
+ * own pool) are closed after their game. Every
+ * pair of players plays the same number of games, and they take turns
+ * playing first, since the first player has a big advantage in Hex.
+ *
+ * From the results, every pair gets the Elo difference that matches its
+ * score, and all of the players get ratings fitted to all of the games at
+ * once, like BayesElo does (the Bradley-Terry model, with a prior of one
+ * virtual win and one virtual loss against every opponent, so that a player
+ * who won all of the games doesn't get an infinite rating). Both come with
+ * 95% confidence intervals.
+ *
+ * @author Ljubo Raicevic <rljubo90@gmail.com>
+ */
+public class Tournament {
+
+    /**
+     * z for 95% confidence intervals.
+     */
+    private static final double Z_95 = 1.959964;
+
+    /**
+     * Virtual games every pair of players gets, half of them won by each.
+     */
+    private static final double PRIOR_GAMES = 2;
+
+    private static final int MAX_ITERATIONS = 10000;
+    private static final double TOLERANCE = 1e-10;
+
+    private final int boardSize;
+    private final int threads;
+    private final List<String> names = new ArrayList<>();
+    private final List<Supplier<? extends Player>> factories = new ArrayList<>();
+    private long timePerMove;
+    private long timePerGame;
+    private boolean verbose;
+
+    /**
+     * Initializes a tournament that plays a game on each of the processors.
+     *
+     * @param boardSize Board size
+     */
+    public Tournament(int boardSize) {
+        this(boardSize, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Initializes a tournament.
+     *
+     * @param boardSize Board size
+     * @param threads Number of games played at once
+     */
+    public Tournament(int boardSize, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1.");
+        }
+        this.boardSize = boardSize;
+        this.threads = threads;
+    }
+
+    /**
+     * Adds a player.
+     *
+     * @param name Name of the player in the results
+     * @param factory Makes a new player for every game
+     */
+    public void addPlayer(String name, Supplier<? extends Player> factory) {
+        names.add(name);
+        factories.add(factory);
+    }
+
+    /**
+     * Sets the clock of the games (see Game).
+     *
+     * @param timePerMoveMillis Time limit for a move, 0 for no limit
+     * @param timePerGameMillis Time limit for all of a player's moves, 0 for
+     * no limit
+     */
+    public void setTimeControl(long timePerMoveMillis, long timePerGameMillis) {
+        this.timePerMove = timePerMoveMillis;
+        this.timePerGame = timePerGameMillis;
+    }
+
+    /**
+     * Turns printing a line for every finished game on or off. Off by
+     * default. The boards are never printed.
+     *
+     * @param verbose true to print the games
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Plays the tournament.
+     *
+     * @param gamesPerPair How many games every pair of players plays
+     * @return Results
+     * @throws InterruptedException if the thread is interrupted, the games
+     * are stopped then
+     */
+    public Results play(int gamesPerPair) throws InterruptedException {
+        int noOfPlayers = names.size();
+        if (noOfPlayers < 2) {
+            throw new IllegalStateException("A tournament needs two players.");
+        }
+
+        Results results = new Results(names);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CompletionService<int[]> games = new ExecutorCompletionService<>(executor);
+        int noOfGames = 0;
+
+        try {
+            //every pair plays, taking turns being first
+            for (int i = 0; i < noOfPlayers; i++) {
+                for (int j = i + 1; j < noOfPlayers; j++) {
+                    for (int game = 0; game < gamesPerPair; game++) {
+                        games.submit(game % 2 == 0 ? game(i, j) : game(j, i));
+                        noOfGames++;
+                    }
+                }
+            }
+
+            for (int finished = 1; finished <= noOfGames; finished++) {
+                int[] result = games.take().get();
+                results.add(result[0], result[1], result[2]);
+                if (verbose) {
+                    System.out.println(String.format("%d/%d %s - %s: %s wins",
+                            finished, noOfGames, names.get(result[0]),
+                            names.get(result[1]), names.get(result[result[2]])));
+                }
+            }
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Game failed.", ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return results;
+    }
+
+    /**
+     * A game between two of the players.
+     *
+     * @return Task which returns the first player, the second one, and 0 if
+     * the first one won or 1 if the second one did
+     */
+    private Callable<int[]> game(int first, int second) {
+        return () -> {
+            //players with their own threads are shut down after the game,
+            //each one even if making or closing the other one fails
+            Player p1 = factories.get(first).get();
+            try {
+                Player p2 = factories.get(second).get();
+                try {
+                    Game g = new Game(new Board(boardSize), p1, p2,
+                            timePerMove, timePerGame);
+                    g.setVerbose(false);
+                    return new int[] { first, second, g.play() - 1 };
+                } finally {
+                    close(p2);
+                }
+            } finally {
+                close(p1);
+            }
+        };
+    }
+
+    /**
+     * Closes the player if it's AutoCloseable.
+     *
+     * @param player Player
+     */
+    private static void close(Player player) throws Exception {
+        if (player instanceof AutoCloseable) {
+            ((AutoCloseable) player).close();
+        }
+    }
+
+    /**
+     * Results of a tournament.
+     */
+    public static final class Results {
+        private final List<String> names;
+
+        /**
+         * wins[i][j] is the number of games player i won against player j.
+         */
+        private final int[][] wins;
+        private int firstPlayerWins;
+        private int noOfGames;
+
+        private Results(List<String> names) {
+            this.names = new ArrayList<>(names);
+            this.wins = new int[names.size()][names.size()];
+        }
+
+        private void add(int first, int second, int winner) {
+            if (winner == 0) {
+                wins[first][second]++;
+                firstPlayerWins++;
+            } else {
+                wins[second][first]++;
+            }
+            noOfGames++;
+        }
+
+        public int getNoOfPlayers() {
+            return names.size();
+        }
+
+        public String getName(int player) {
+            return names.get(player);
+        }
+
+        public int getNoOfGames() {
+            return noOfGames;
+        }
+
+        /**
+         * Number of games won by the player who played first.
+         *
+         * @return Number of games
+         */
+        public int getFirstPlayerWins() {
+            return firstPlayerWins;
+        }
+
+        /**
+         * Number of games one player won against the other.
+         *
+         * @param player Player
+         * @param opponent Opponent
+         * @return Number of games
+         */
+        public int getWins(int player, int opponent) {
+            return wins[player][opponent];
+        }
+
+        /**
+         * Elo difference between the player and the opponent that matches
+         * the score of their games.
+         *
+         * @param player Player
+         * @param opponent Opponent
+         * @return Elo difference, infinite if one of them won all of the games
+         */
+        public double getEloDifference(int player, int opponent) {
+            int games = wins[player][opponent] + wins[opponent][player];
+            return elo((double) wins[player][opponent] / games);
+        }
+
+        /**
+         * 95% confidence interval of getEloDifference, the Wilson interval
+         * of the score.
+         *
+         * @param player Player
+         * @param opponent Opponent
+         * @return Lower and upper bound
+         */
+        public double[] getEloInterval(int player, int opponent) {
+            int games = wins[player][opponent] + wins[opponent][player];
+            double score = (double) wins[player][opponent] / games;
+            
+            //Wilson score interval, which stays inside (0, 1) unless one of
+            //the players won all of the games
+            double z2 = Z_95 * Z_95;
+            double center = (score + z2 / (2 * games)) / (1 + z2 / games);
+            double error = Z_95 / (1 + z2 / games) * Math.sqrt(
+                    score * (1 - score) / games + z2 / (4.0 * games * games));
+            return new double[] {
+                elo(Math.max(center - error, 0)), elo(Math.min(center + error, 1))
+            };
+        }
+
+        /**
+         * Ratings of the players fitted to all of the games, with an average
+         * of 0.
+         *
+         * @return Elo rating of every player
+         */
+        public double[] getRatings() {
+            double[] gamma = fit();
+            double[] ratings = new double[gamma.length];
+            double mean = 0;
+            for (int i = 0; i < gamma.length; i++) {
+                ratings[i] = 400 * Math.log10(gamma[i]);
+                mean += ratings[i] / gamma.length;
+            }
+            for (int i = 0; i < gamma.length; i++) {
+                ratings[i] -= mean;
+            }
+            return ratings;
+        }
+
+        /**
+         * Half widths of the 95% confidence intervals of getRatings, from the
+         * curvature of the likelihood at the fitted ratings.
+         *
+         * @return Elo error of every player
+         */
+        public double[] getRatingErrors() {
+            double[] gamma = fit();
+            int n = gamma.length;
+
+            //information matrix of the natural log ratings, with 1 / n added
+            //everywhere since the ratings can all be moved by the same amount
+            double[][] information = new double[n][n];
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    information[i][j] = 1.0 / n;
+                }
+                for (int j = 0; j < n; j++) {
+                    if (i == j) { continue; }
+                    double p = gamma[i] / (gamma[i] + gamma[j]);
+                    double w = games(i, j) * p * (1 - p);
+                    information[i][i] += w;
+                    information[i][j] -= w;
+                }
+            }
+
+            double[][] covariance = invert(information);
+            double[] errors = new double[n];
+            for (int i = 0; i < n; i++) {
+                double variance = Math.max(covariance[i][i] - 1.0 / n, 0);
+                errors[i] = Z_95 * Math.sqrt(variance) * 400 / Math.log(10);
+            }
+            return errors;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            double[] ratings = getRatings();
+            double[] errors = getRatingErrors();
+
+            sb.append(String.format("%d games, first player won %.1f%%%n",
+                    noOfGames, 100.0 * firstPlayerWins / Math.max(noOfGames, 1)));
+            for (int i = 0; i < names.size(); i++) {
+                int won = 0;
+                int games = 0;
+                for (int j = 0; j < names.size(); j++) {
+                    won += wins[i][j];
+                    games += wins[i][j] + wins[j][i];
+                }
+                sb.append(String.format("%-20s %7.1f +/- %5.1f  %d/%d%n",
+                        names.get(i), ratings[i], errors[i], won, games));
+            }
+            for (int i = 0; i < names.size(); i++) {
+                for (int j = i + 1; j < names.size(); j++) {
+                    double[] interval = getEloInterval(i, j);
+                    sb.append(String.format("%s - %s: %d-%d, %.1f Elo [%.1f, %.1f]%n",
+                            names.get(i), names.get(j), wins[i][j], wins[j][i],
+                            getEloDifference(i, j), interval[0], interval[1]));
+                }
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Games between the two players, with the virtual ones.
+         */
+        private double games(int i, int j) {
+            int played = wins[i][j] + wins[j][i];
+            return played > 0 ? played + PRIOR_GAMES : 0;
+        }
+
+        /**
+         * Fits the Bradley-Terry strengths of the players with the MM
+         * algorithm: every strength is its wins divided by the sum of
+         * games / (its strength + opponent's strength), repeated until
+         * they stop changing.
+         *
+         * @return Strength of every player, 10^(Elo / 400)
+         */
+        private double[] fit() {
+            int n = names.size();
+            double[] gamma = new double[n];
+            Arrays.fill(gamma, 1);
+
+            for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+                double change = 0;
+                double logSum = 0;
+                for (int i = 0; i < n; i++) {
+                    double won = 0;
+                    double sum = 0;
+                    for (int j = 0; j < n; j++) {
+                        if (i == j || games(i, j) == 0) { continue; }
+                        won += wins[i][j] + PRIOR_GAMES / 2;
+                        sum += games(i, j) / (gamma[i] + gamma[j]);
+                    }
+                    double next = sum > 0 ? won / sum : 1;
+                    change = Math.max(change, Math.abs(Math.log(next / gamma[i])));
+                    gamma[i] = next;
+                    logSum += Math.log(next);
+                }
+
+                //keep the geometric mean at 1
+                double scale = Math.exp(-logSum / n);
+                for (int i = 0; i < n; i++) {
+                    gamma[i] *= scale;
+                }
+                if (change < TOLERANCE) { break; }
+            }
+            return gamma;
+        }
+
+        private static double elo(double score) {
+            return -400 * Math.log10(1 / score - 1);
+        }
+
+        /**
+         * Inverts the matrix with Gauss-Jordan elimination.
+         */
+        private static double[][] invert(double[][] m) {
+            int n = m.length;
+            double[][] a = new double[n][2 * n];
+            for (int i = 0; i < n; i++) {
+                System.arraycopy(m[i], 0, a[i], 0, n);
+                a[i][n + i] = 1;
+            }
+
+            for (int col = 0; col < n; col++) {
+                int pivot = col;
+                for (int row = col + 1; row < n; row++) {
+                    if (Math.abs(a[row][col]) > Math.abs(a[pivot][col])) {
+                        pivot = row;
+                    }
+                }
+                double[] tmp = a[col];
+                a[col] = a[pivot];
+                a[pivot] = tmp;
+
+                double p = a[col][col];
+                for (int k = 0; k < 2 * n; k++) {
+                    a[col][k] /= p;
+                }
+                for (int row = 0; row < n; row++) {
+                    if (row == col || a[row][col] == 0) { continue; }
+                    double f = a[row][col];
+                    for (int k = 0; k < 2 * n; k++) {
+                        a[row][k] -= f * a[col][k];
+                    }
+                }
+            }
+
+            double[][] result = new double[n][n];
+            for (int i = 0; i < n; i++) {
+                System.arraycopy(a[i], n, result[i], 0, n);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package hex2;
+
+/**
+ * The <tt>UndoUF</tt> class is a version of {@link UF} whose unions can be
+ * taken back. It is used by Game and by searches, which play a move, look
+ * at the position and then take the move back.
+ * <p>
+ * It uses weighted quick union by rank <em>without</em> path compression, so
+ * a union changes only the parent of one root (and possibly the rank of the
+ * other one). Every union that merges two components is pushed onto a
+ * journal. <em>checkpoint</em> returns the current size of the journal in
+ * constant time, and <em>rollback</em> pops the unions made after a
+ * checkpoint, each in constant time. The <em>find</em>, <em>connected</em>
+ * and <em>union</em> operations take logarithmic time.
+ *
+ * @author Ljubo Raicevic <rljubo90@gmail.com>
+ */
+public class UndoUF {
+    private final int[] id;          // id[i] = parent of i
+    private final byte[] rank;       // rank[i] = rank of subtree rooted at i
+    private final int[] journal;     // roots that got a parent, in order
+    private final boolean[] ranked;  // did the union increase the parent's rank
+    private int noOfUnions;          // size of the journal
+    private int count;               // number of components
+
+    /**
+     * Initializes an empty union-find data structure with <tt>N</tt>
+     * isolated components <tt>0</tt> through <tt>N-1</tt>
+     * @throws java.lang.IllegalArgumentException if <tt>N &lt; 0</tt>
+     * @param N the number of sites
+     */
+    public UndoUF(int N) {
+        if (N < 0) throw new IllegalArgumentException();
+        count = N;
+        id = new int[N];
+        rank = new byte[N];
+        journal = new int[Math.max(N - 1, 0)];
+        ranked = new boolean[Math.max(N - 1, 0)];
+        for (int i = 0; i < N; i++) {
+            id[i] = i;
+        }
+    }
+
+    /**
+     * Returns the component identifier for the component containing site <tt>p</tt>.
+     * @param p the integer representing one object
+     * @return the component identifier for the component containing site <tt>p</tt>
+     * @throws java.lang.IndexOutOfBoundsException unless <tt>0 &le; p &lt; N</tt>
+     */
+    public int find(int p) {
+        if (p < 0 || p >= id.length) throw new IndexOutOfBoundsException();
+        while (p != id[p]) {
+            p = id[p];
+        }
+        return p;
+    }
+
+    /**
+     * Returns the number of components.
+     * @return the number of components (between <tt>1</tt> and <tt>N</tt>)
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Are the two sites <tt>p</tt> and <tt>q</tt> in the same component?
+     * @param p the integer representing one site
+     * @param q the integer representing the other site
+     * @return true if the two sites <tt>p</tt> and <tt>q</tt> are in the same component; false otherwise
+     * @throws java.lang.IndexOutOfBoundsException unless
+     *      both <tt>0 &le; p &lt; N</tt> and <tt>0 &le; q &lt; N</tt>
+     */
+    public boolean connected(int p, int q) {
+        return find(p) == find(q);
+    }
+
+    /**
+     * Merges the component containing site <tt>p</tt> with the
+     * the component containing site <tt>q</tt>.
+     * @param p the integer representing one site
+     * @param q the integer representing the other site
+     * @throws java.lang.IndexOutOfBoundsException unless
+     *      both <tt>0 &le; p &lt; N</tt> and <tt>0 &le; q &lt; N</tt>
+     */
+    public void union(int p, int q) {
+        int i = find(p);
+        int j = find(q);
+        if (i == j) return;
+
+        // make root of smaller rank point to root of larger rank
+        boolean rankUp = false;
+        if (rank[i] < rank[j]) {
+            int swap = i;
+            i = j;
+            j = swap;
+        } else if (rank[i] == rank[j]) {
+            rank[i]++;
+            rankUp = true;
+        }
+        id[j] = i;
+
+        journal[noOfUnions] = j;
+        ranked[noOfUnions] = rankUp;
+        noOfUnions++;
+        count--;
+    }
+
+    /**
+     * Returns a checkpoint which rollback can return to. Takes constant time.
+     * @return the checkpoint
+     */
+    public int checkpoint() {
+        return noOfUnions;
+    }
+
+    /**
+     * Takes back all the unions made after the checkpoint. Takes time
+     * proportional to the number of those unions.
+     * @param checkpoint a checkpoint returned by checkpoint
+     * @throws java.lang.IllegalArgumentException if the checkpoint has
+     *      already been rolled back
+     */
+    public void rollback(int checkpoint) {
+        if (checkpoint < 0 || checkpoint > noOfUnions) {
+            throw new IllegalArgumentException();
+        }
+        while (noOfUnions > checkpoint) {
+            noOfUnions--;
+            int j = journal[noOfUnions];
+            int i = id[j];
+            id[j] = j;
+            if (ranked[noOfUnions]) { rank[i]--; }
+            count++;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package hex2;
+
+/**
+ * Checks if a player connected the two edges of the board by working on
+ * bitboards. Starting from the fields on the first edge, the set of reached
+ * fields is grown by shifting it towards all six neighbors at once and masking
+ * it with the player's fields, until it stops changing or reaches the other
+ * edge.
+ *
+ * A field (row, col) is bit row * size + col. Its neighbors are:
+ * <pre>
+ *   (row - 1, col), (row - 1, col + 1) => bit - size, bit - size + 1
+ *   (row, col - 1), (row, col + 1)     => bit - 1,    bit + 1
+ *   (row + 1, col - 1), (row + 1, col) => bit + size - 1, bit + size
+ * </pre>
+ * Shifts that move a field by one column are masked so that they don't wrap
+ * around into the neighboring row.
+ *
+ * A WinDetector has its own scratch space and doesn't allocate anything while
+ * checking, so every thread should use its own instance. Board sizes up to 63
+ * are supported.
+ *
+ * @author Ljubo Raicevic <rljubo90@gmail.com>
+ */
+public final class WinDetector {
+
+    /**
+     * Board side size.
+     */
+    private final int size;
+
+    /**
+     * Number of longs in a bitboard.
+     */
+    private final int words;
+
+    /**
+     * Masks of the fields that are not in the first or in the last column,
+     * from the BoardGeometry.
+     */
+    private final long[] notFirstCol;
+    private final long[] notLastCol;
+
+    /**
+     * Masks of the fields in the first and last row, and in the first and
+     * last column.
+     */
+    private final long[] firstRow;
+    private final long[] lastRow;
+    private final long[] firstCol;
+    private final long[] lastCol;
+
+    /**
+     * Scratch space: fields reached so far and fields reached in this step.
+     */
+    private final long[] reached;
+    private final long[] grown;
+
+    /**
+     * Detectors used by MonteCarlo.didPlayerWin, one per thread and board
+     * size.
+     */
+    private static final ThreadLocal<WinDetector[]> detectors =
+            ThreadLocal.withInitial(() -> new WinDetector[Board.MAX_SIZE + 1]);
+
+    /**
+     * Initializes a WinDetector for boards of the given size.
+     *
+     * @param size Board size
+     */
+    public WinDetector(int size) {
+        BoardGeometry geometry = BoardGeometry.forSize(size);
+        this.size = size;
+        this.words = Board.wordsFor(size);
+        this.notFirstCol = geometry.getNotFirstColMask();
+        this.notLastCol = geometry.getNotLastColMask();
+        this.firstRow = geometry.getFirstRowMask();
+        this.lastRow = geometry.getLastRowMask();
+        this.firstCol = geometry.getFirstColMask();
+        this.lastCol = geometry.getLastColMask();
+        this.reached = new long[words];
+        this.grown = new long[words];
+    }
+
+    /**
+     * Returns this thread's WinDetector for the given board size.
+     *
+     * @param size Board size
+     * @return WinDetector for the board size
+     */
+    static WinDetector forSize(int size) {
+        WinDetector[] cache = detectors.get();
+        WinDetector result = cache[size];
+        if (result == null) {
+            result = new WinDetector(size);
+            cache[size] = result;
+        }
+        return result;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Checks if the player won on the board b. Like MonteCarlo.didPlayerWin,
+     * the second player is considered the winner whenever the first player's
+     * fields don't connect the first and the last row.
+     *
+     * @param b Board
+     * @param player 1 or 2
+     * @return true if player won, false otherwise
+     */
+    public boolean didPlayerWin(Board b, byte player) {
+        return (isVerticalConnected(b.getVerticalBits(), b.getHorizontalBits())
+                ? 1 : 2) == player;
+    }
+
+    /**
+     * Checks if the fields in the bitboard connect the first and the last row.
+     *
+     * @param fields Bitboard of the first player's fields
+     * @return true if the first and the last row are connected
+     */
+    public boolean isVerticalConnected(long[] fields) {
+        return isConnected(fields, null, firstRow, lastRow);
+    }
+
+    /**
+     * Checks if the fields in the first bitboard, that are not also in the
+     * second one, connect the first and the last row.
+     *
+     * @param fields Bitboard of the first player's fields
+     * @param excluded Bitboard of fields that should be ignored
+     * @return true if the first and the last row are connected
+     */
+    public boolean isVerticalConnected(long[] fields, long[] excluded) {
+        return isConnected(fields, excluded, firstRow, lastRow);
+    }
+
+    /**
+     * Checks if the fields in the bitboard connect the first and the last
+     * column.
+     *
+     * @param fields Bitboard of the second player's fields
+     * @return true if the first and the last column are connected
+     */
+    public boolean isHorizontalConnected(long[] fields) {
+        return isConnected(fields, null, firstCol, lastCol);
+    }
+
+    /**
+     * Grows the set of fields reachable from the start edge until it stops
+     * changing or touches the end edge.
+     *
+     * @param fields Bitboard of the player's fields
+     * @param excluded Bitboard of fields that should be ignored, can be null
+     * @param start Mask of the start edge
+     * @param end Mask of the end edge
+     * @return true if the edges are connected
+     */
+    private boolean isConnected(long[] fields, long[] excluded, long[] start,
+            long[] end) {
+
+        if (words == 1) {
+            long stones = excluded == null ? fields[0] : fields[0] & ~excluded[0];
+            return isConnected(stones, start[0], end[0]);
+        }
+
+        boolean any = false;
+        for (int w = 0; w < words; w++) {
+            reached[w] = stones(fields, excluded, w) & start[w];
+            any |= reached[w] != 0;
+        }
+
+        while (any) {
+            //did the reached fields touch the end edge
+            for (int w = 0; w < words; w++) {
+                if ((reached[w] & end[w]) != 0) { return true; }
+            }
+
+            //reach all of the neighbors at once
+            shiftLeft(reached, grown, 1, notFirstCol);
+            shiftRight(reached, grown, 1, notLastCol);
+            shiftLeft(reached, grown, size, null);
+            shiftRight(reached, grown, size, null);
+            if (size > 1) {
+                shiftLeft(reached, grown, size - 1, notLastCol);
+                shiftRight(reached, grown, size - 1, notFirstCol);
+            }
+
+            //keep the player's fields only and stop if nothing new was reached
+            any = false;
+            for (int w = 0; w < words; w++) {
+                long next = reached[w] | grown[w] & stones(fields, excluded, w);
+                any |= next != reached[w];
+                reached[w] = next;
+                grown[w] = 0;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Single long version of isConnected, used for boards up to 8x8.
+     *
+     * @param stones Bitboard of the player's fields
+     * @param start Mask of the start edge
+     * @param end Mask of the end edge
+     * @return true if the edges are connected
+     */
+    private boolean isConnected(long stones, long start, long end) {
+        long notFirst = notFirstCol[0];
+        long notLast = notLastCol[0];
+        int diagonal = size - 1;
+        long reach = stones & start;
+
+        while (reach != 0) {
+            if ((reach & end) != 0) { return true; }
+
+            long next = reach
+                    | (reach << 1 & notFirst)
+                    | (reach >>> 1 & notLast)
+                    | reach << size
+                    | reach >>> size
+                    | (reach << diagonal & notLast)
+                    | (reach >>> diagonal & notFirst);
+            next &= stones;
+            if (next == reach) { return false; }
+            reach = next;
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns a word of the player's fields.
+     */
+    private static long stones(long[] fields, long[] excluded, int w) {
+        return excluded == null ? fields[w] : fields[w] & ~excluded[w];
+    }
+
+    /**
+     * ORs the bitboard shifted towards higher bits into out.
+     *
+     * @param in Bitboard to be shifted
+     * @param out Bitboard to which the result is added
+     * @param k Shift, between 1 and 63
+     * @param mask Mask applied to the result, can be null
+     */
+    private void shiftLeft(long[] in, long[] out, int k, long[] mask) {
+        for (int w = words - 1; w >= 0; w--) {
+            long shifted = in[w] << k;
+            if (w > 0) { shifted |= in[w - 1] >>> (64 - k); }
+            out[w] |= mask == null ? shifted : shifted & mask[w];
+        }
+    }
+
+    /**
+     * ORs the bitboard shifted towards lower bits into out.
+     *
+     * @param in Bitboard to be shifted
+     * @param out Bitboard to which the result is added
+     * @param k Shift, between 1 and 63
+     * @param mask Mask applied to the result, can be null
+     */
+    private void shiftRight(long[] in, long[] out, int k, long[] mask) {
+        for (int w = 0; w < words; w++) {
+            long shifted = in[w] >>> k;
+            if (w < words - 1) { shifted |= in[w + 1] << (64 - k); }
+            out[w] |= mask == null ? shifted : shifted & mask[w];
+        }
+    }
+}
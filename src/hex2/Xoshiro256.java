@@ -0,0 +1,137 @@
+package hex2;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * xoshiro256++ random number generator by David Blackman and Sebastiano Vigna
+ * (http://prng.di.unimi.it/). It has 256 bits of state, which are initialized
+ * from a 64 bit seed using SplitMix64, so the same seed always gives the same
+ * sequence.
+ * 
+ * @author Ljubo Raicevic <rljubo90@gmail.com>
+ */
+public final class Xoshiro256 implements RandomSource {
+    
+    /**
+     * Constants used by jump, which advances the generator by 2^128 steps.
+     */
+    private static final long[] JUMP = {
+        0x180ec6d33cfd0abaL, 0xd5a61266f0c9392cL, 
+        0xa9582618e03fc9aaL, 0x39abdc4529b1661cL
+    };
+    
+    /**
+     * Seeds of the generators returned by current, one for each thread.
+     */
+    private static final AtomicLong threadSeeds = 
+            new AtomicLong(System.nanoTime() ^ 0x5DEECE66DL);
+    
+    /**
+     * Generators returned by current.
+     */
+    private static final ThreadLocal<Xoshiro256> threadGenerators = 
+            ThreadLocal.withInitial(() -> new Xoshiro256(
+                    threadSeeds.getAndAdd(0x9E3779B97F4A7C15L)));
+    
+    private long s0;
+    private long s1;
+    private long s2;
+    private long s3;
+    
+    /**
+     * Initializes a generator with the given seed.
+     * 
+     * @param seed Seed
+     */
+    public Xoshiro256(long seed) {
+        setSeed(seed);
+    }
+    
+    /**
+     * Returns this thread's generator. It is seeded differently for every
+     * thread, so it should only be used when runs don't need to be replayed.
+     * 
+     * @return Generator of the current thread
+     */
+    public static Xoshiro256 current() {
+        return threadGenerators.get();
+    }
+    
+    /**
+     * Resets the generator, afterwards it returns the same sequence as a new
+     * Xoshiro256(seed). Doesn't allocate anything, so workers can reseed their
+     * generator for each unit of work.
+     * 
+     * @param seed Seed
+     */
+    public void setSeed(long seed) {
+        long x = seed;
+        s0 = splitMix64(x += 0x9E3779B97F4A7C15L);
+        s1 = splitMix64(x += 0x9E3779B97F4A7C15L);
+        s2 = splitMix64(x += 0x9E3779B97F4A7C15L);
+        s3 = splitMix64(x + 0x9E3779B97F4A7C15L);
+    }
+    
+    @Override
+    public long nextLong() {
+        long result = Long.rotateLeft(s0 + s3, 23) + s0;
+        long t = s1 << 17;
+        
+        s2 ^= s0;
+        s3 ^= s1;
+        s1 ^= s2;
+        s0 ^= s3;
+        s2 ^= t;
+        s3 = Long.rotateLeft(s3, 45);
+        
+        return result;
+    }
+    
+    /**
+     * Returns a generator with this one's current state and then jumps this
+     * one 2^128 steps ahead, so the two sequences don't overlap.
+     * 
+     * @return New generator
+     */
+    @Override
+    public Xoshiro256 split() {
+        Xoshiro256 result = new Xoshiro256(0);
+        result.s0 = s0;
+        result.s1 = s1;
+        result.s2 = s2;
+        result.s3 = s3;
+        jump();
+        return result;
+    }
+    
+    /**
+     * Advances the generator by 2^128 steps.
+     */
+    private void jump() {
+        long t0 = 0, t1 = 0, t2 = 0, t3 = 0;
+        for (long jump : JUMP) {
+            for (int b = 0; b < 64; b++) {
+                if ((jump & (1L << b)) != 0) {
+                    t0 ^= s0;
+                    t1 ^= s1;
+                    t2 ^= s2;
+                    t3 ^= s3;
+                }
+                nextLong();
+            }
+        }
+        s0 = t0;
+        s1 = t1;
+        s2 = t2;
+        s3 = t3;
+    }
+    
+    /**
+     * SplitMix64 output function.
+     */
+    static long splitMix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}